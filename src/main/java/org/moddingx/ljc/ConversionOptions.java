@@ -0,0 +1,43 @@
+package org.moddingx.ljc;
+
+import jakarta.annotation.Nullable;
+
+import java.nio.file.Path;
+
+// cacheDirectory is null, if converted classes should not be cached. cacheSize is given in bytes.
+// With multiRelease, the original classes are kept in META-INF/versions, so newer runtimes can use them.
+// classCacheSize is the maximum size in bytes of parsed classes the class path and the symbol table each keep in memory.
+public record ConversionOptions(int threads, @Nullable Path cacheDirectory, long cacheSize, boolean multiRelease, long classCacheSize) {
+
+    public static final long DEFAULT_CACHE_SIZE = 512L * 1024 * 1024;
+    public static final long DEFAULT_CLASS_CACHE_SIZE = 256L * 1024 * 1024;
+    public static final ConversionOptions DEFAULT = new ConversionOptions(1, null, DEFAULT_CACHE_SIZE, false, DEFAULT_CLASS_CACHE_SIZE);
+
+    public ConversionOptions {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid thread count: " + threads);
+        }
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Invalid cache size: " + cacheSize);
+        }
+        if (classCacheSize < 0) {
+            throw new IllegalArgumentException("Invalid class cache size: " + classCacheSize);
+        }
+    }
+
+    public ConversionOptions withThreads(int threads) {
+        return new ConversionOptions(threads, this.cacheDirectory(), this.cacheSize(), this.multiRelease(), this.classCacheSize());
+    }
+
+    public ConversionOptions withCache(@Nullable Path cacheDirectory, long cacheSize) {
+        return new ConversionOptions(this.threads(), cacheDirectory, cacheSize, this.multiRelease(), this.classCacheSize());
+    }
+
+    public ConversionOptions withMultiRelease(boolean multiRelease) {
+        return new ConversionOptions(this.threads(), this.cacheDirectory(), this.cacheSize(), multiRelease, this.classCacheSize());
+    }
+
+    public ConversionOptions withClassCacheSize(long classCacheSize) {
+        return new ConversionOptions(this.threads(), this.cacheDirectory(), this.cacheSize(), this.multiRelease(), classCacheSize);
+    }
+}
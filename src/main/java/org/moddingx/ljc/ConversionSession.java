@@ -0,0 +1,73 @@
+package org.moddingx.ljc;
+
+import org.moddingx.ljc.convert.ClassConverter;
+import org.moddingx.ljc.convert.ClassFeature;
+import org.moddingx.ljc.convert.ClassHierarchy;
+import org.moddingx.ljc.symbol.SymbolTable;
+import org.moddingx.ljc.util.ClassAccessor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Converts single classes held in memory, e.g. by a class loader. A session may be used by multiple threads at the
+// same time and for any number of classes. The symbol table is not closed by the session.
+public class ConversionSession {
+
+    private final SymbolTable table;
+    private final ClassConverter converter;
+    private final ClassHierarchy hierarchy;
+
+    // classes is used to compute the class hierarchy of converted classes. The symbol table is queried for classes
+    // not found there.
+    public ConversionSession(SymbolTable table, ClassAccessor classes) {
+        this.table = table;
+        this.converter = new ClassConverter(table.api());
+        this.hierarchy = new ClassHierarchy(ClassAccessor.of(classes, table));
+    }
+
+    public LanguageLevel api() {
+        return this.table.api();
+    }
+
+    // Only the first 8 bytes of the class file are needed, see ClassConverter#needsConversion
+    public boolean needsConversion(byte[] header) {
+        return this.converter.needsConversion(header);
+    }
+
+    public Result convert(byte[] data) {
+        if (!this.needsConversion(data)) {
+            return new Result(data, false, List.of(), List.of());
+        }
+        ClassReader reader = new ClassReader(data);
+        ClassNode original = new ClassNode();
+        reader.accept(original, 0);
+        // The same problem may be found more than once in a class, but is only reported once.
+        Set<String> conversionErrors = new LinkedHashSet<>();
+        ClassNode node = this.converter.convert(original, ClassFeature.scan(reader), this.table, conversionErrors::add);
+        if (node == null) {
+            return new Result(data, false, List.of(), List.of());
+        }
+        // The class is checked while it is written, so it is only visited once.
+        List<String> errors = new ArrayList<>();
+        byte[] converted = this.hierarchy.writeClass(original, node, visitor -> this.table.checking(visitor, errors::add), conversionErrors::add);
+        return new Result(converted, true, List.copyOf(errors), List.copyOf(conversionErrors));
+    }
+
+    // Reads the remaining bytes of the buffer. The position of the buffer is not changed.
+    public Result convert(ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return this.convert(bytes);
+    }
+
+    // data is the original class, if it did not need to be converted. errors holds references to members that are
+    // not present in the target version. conversionErrors holds other problems found during conversion, e.g. classes
+    // missing from the class hierarchy. They don't prevent the class from being used, but may cause it to fail
+    // verification.
+    public record Result(byte[] data, boolean converted, List<String> errors, List<String> conversionErrors) {}
+}
@@ -1,5 +1,7 @@
 package org.moddingx.ljc;
 
+import jakarta.annotation.Nullable;
+import org.moddingx.ljc.convert.ClassFeature;
 import org.moddingx.ljc.convert.j11.ExplicitConstants;
 import org.moddingx.ljc.convert.j11.NestHostToPackage;
 import org.moddingx.ljc.convert.j16.RecordToClass;
@@ -9,28 +11,29 @@ import org.moddingx.ljc.convert.j21.DynamicSwitchPatterns;
 import org.moddingx.ljc.convert.j21.MatchExceptionFixer;
 import org.moddingx.ljc.convert.j9.DynamicStringConcat;
 import org.moddingx.ljc.convert.j9.ModuleRemover;
-import org.moddingx.ljc.util.MultipleRoundVisitor;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Opcodes;
 
-import java.util.function.Function;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
 public enum LanguageLevel {
     // JAVA_8 downgrades to java 8
     JAVA_8(8, Opcodes.ASM5, Opcodes.V1_8, '8'),
-    JAVA_9(9, Opcodes.ASM6, Opcodes.V9, '9', ModuleRemover::new, DynamicStringConcat::new),
+    JAVA_9(9, Opcodes.ASM6, Opcodes.V9, '9', when(ClassFeature.MODULE, ModuleRemover::new), when(ClassFeature.STRING_CONCAT, DynamicStringConcat::new)),
     JAVA_10(10, Opcodes.ASM6, Opcodes.V10, 'A'),
-    JAVA_11(11, Opcodes.ASM7, Opcodes.V11, 'B', MultipleRoundVisitor.of(ExplicitConstants::new), NestHostToPackage::new),
+    JAVA_11(11, Opcodes.ASM7, Opcodes.V11, 'B', when(ClassFeature.CONSTANT_DYNAMIC, ExplicitConstants::new), when(ClassFeature.NEST, NestHostToPackage::new)),
     JAVA_12(12, Opcodes.ASM7, Opcodes.V12, 'C'),
     JAVA_13(13, Opcodes.ASM7, Opcodes.V13, 'D'),
     JAVA_14(14, Opcodes.ASM7, Opcodes.V14, 'E'),
     JAVA_15(15, Opcodes.ASM7, Opcodes.V15, 'F'),
-    JAVA_16(16, Opcodes.ASM8, Opcodes.V16, 'G', RecordToClass::new),
-    JAVA_17(17, Opcodes.ASM9, Opcodes.V17, 'H', AlwaysStrictFP::new, UnsealClasses::new),
+    JAVA_16(16, Opcodes.ASM8, Opcodes.V16, 'G', when(ClassFeature.RECORD, RecordToClass::new)),
+    JAVA_17(17, Opcodes.ASM9, Opcodes.V17, 'H', always(AlwaysStrictFP::new), when(ClassFeature.SEALED, UnsealClasses::new)),
     JAVA_18(18, Opcodes.ASM9, Opcodes.V18, 'I'),
     JAVA_19(19, Opcodes.ASM9, Opcodes.V19, 'J'),
     JAVA_20(20, Opcodes.ASM9, Opcodes.V20, 'K'),
-    JAVA_21(21, Opcodes.ASM9, Opcodes.V21, 'L', DynamicSwitchPatterns::new, MatchExceptionFixer::new),
+    JAVA_21(21, Opcodes.ASM9, Opcodes.V21, 'L', when(ClassFeature.SWITCH_PATTERNS, DynamicSwitchPatterns::new), when(ClassFeature.MATCH_EXCEPTION, MatchExceptionFixer::new)),
     JAVA_22(22, Opcodes.ASM9, Opcodes.V22, 'M'),
     JAVA_23(23, Opcodes.ASM9, Opcodes.V23, 'N'),
     JAVA_24(24, Opcodes.ASM9, Opcodes.V24, 'O');
@@ -41,26 +44,39 @@ public enum LanguageLevel {
     public final int asm;
     public final int jvm;
     public final char symbol;
-    private final Function<ClassVisitor, ClassVisitor> converter;
+    private final List<Converter> converters;
 
-    LanguageLevel(int version, int asm, int jvm, char symbol, ConverterFactory... converters) {
+    LanguageLevel(int version, int asm, int jvm, char symbol, Converter... converters) {
         this.version = version;
         this.asm = asm;
         this.jvm = jvm;
         this.symbol = symbol;
-        
-        this.converter = parent -> {
-            // First added class visitor comes last
-            ClassVisitor current = parent;
-            for (int i = converters.length - 1; i >= 0; i--) {
-                current = converters[i].create(TARGET_ASM, current);
-            }
-            return current;
-        };
+        this.converters = List.of(converters);
     }
     
     public ClassVisitor create(ClassVisitor parent) {
-        return this.converter.apply(parent);
+        return this.create(parent, EnumSet.allOf(ClassFeature.class));
+    }
+    
+    // Only adds the converters, that are needed for a class with the given features.
+    public ClassVisitor create(ClassVisitor parent, Set<ClassFeature> features) {
+        // First added class visitor comes last
+        ClassVisitor current = parent;
+        for (int i = this.converters.size() - 1; i >= 0; i--) {
+            Converter converter = this.converters.get(i);
+            if (converter.feature() == null || features.contains(converter.feature())) {
+                current = converter.factory().create(TARGET_ASM, current);
+            }
+        }
+        return current;
+    }
+    
+    private static Converter always(ConverterFactory factory) {
+        return new Converter(null, factory);
+    }
+    
+    private static Converter when(ClassFeature feature, ConverterFactory factory) {
+        return new Converter(feature, factory);
     }
     
     public static LanguageLevel of(int ver) {
@@ -77,4 +93,7 @@ public enum LanguageLevel {
 
         ClassVisitor create(int api, ClassVisitor parent);
     }
+    
+    // feature is null for converters, that are needed for every class.
+    private record Converter(@Nullable ClassFeature feature, ConverterFactory factory) {}
 }
@@ -1,161 +1,333 @@
 package org.moddingx.ljc;
 
 import jakarta.annotation.Nullable;
-import org.moddingx.ljc.convert.ClassConverter;
-import org.moddingx.ljc.convert.ClassHierarchy;
+import org.moddingx.ljc.archive.ArchiveReader;
+import org.moddingx.ljc.archive.ArchiveWriter;
+import org.moddingx.ljc.cache.ClassPathIndex;
+import org.moddingx.ljc.cache.ConversionCache;
+import org.moddingx.ljc.symbol.SymbolDatabase;
 import org.moddingx.ljc.symbol.SymbolTable;
 import org.moddingx.ljc.util.ClassAccessor;
 import org.moddingx.ljc.util.ClassPath;
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassWriter;
-import org.objectweb.asm.tree.ClassNode;
+import org.moddingx.ljc.util.ParallelExecutor;
+import org.moddingx.ljc.zip.ZipWriter;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.lang.module.ModuleDescriptor;
-import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.Future;
 import java.util.jar.Manifest;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
-public class LegacyConverter {
+// Converts jar files to a lower language level. Symbol data of the target java installation and the class path are
+// loaded once, so the same converter can convert many jars.
+public class LegacyConverter implements Closeable {
+    
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+    private static final String SERVICES = "META-INF/services/";
+    private static final String VERSIONS = "META-INF/versions/";
+    
+    // Maximum number of entries per thread that may be converted ahead of the entry currently being written.
+    private static final int PENDING_PER_THREAD = 16;
     
     public static int run(LanguageLevel api, Path inputPath, Path outputPath, Path javaPath, List<Path> classPath) throws IOException {
-        Log.info("Building Converter.");
-        ClassConverter converter = new ClassConverter(api);
-
+        return run(api, inputPath, outputPath, javaPath, classPath, ConversionOptions.DEFAULT);
+    }
+    
+    public static int run(LanguageLevel api, Path inputPath, Path outputPath, Path javaPath, List<Path> classPath, ConversionOptions options) throws IOException {
+        try (LegacyConverter converter = new LegacyConverter(api, javaPath, classPath, options)) {
+            return converter.convert(inputPath, outputPath);
+        }
+    }
+    
+    private final LanguageLevel api;
+    private final ConversionOptions options;
+    private final SymbolTable table;
+    private final ClassPath cp;
+    private final ParallelExecutor executor;
+    @Nullable private final ConversionCache cache;
+    private final boolean ownsSymbols;
+    
+    public LegacyConverter(LanguageLevel api, Path javaPath, List<Path> classPath, ConversionOptions options) throws IOException {
+        this.api = api;
+        this.options = options;
+        this.ownsSymbols = true;
+        
+        this.cache = options.cacheDirectory() == null ? null : ConversionCache.inCache(options.cacheDirectory(), options.cacheSize());
+        
         Log.info("Building Symbol Table.");
+        this.table = new SymbolTable(api, javaPath, options.classCacheSize(), options.cacheDirectory() == null ? null : SymbolDatabase.inCache(options.cacheDirectory()));
+        try {
+            this.cp = new ClassPath(classPath, options.classCacheSize(), options.cacheDirectory() == null ? null : ClassPathIndex.inCache(options.cacheDirectory()));
+        } catch (IOException | RuntimeException e) {
+            try {
+                this.table.close();
+            } catch (IOException x) {
+                e.addSuppressed(x);
+            }
+            throw e;
+        }
+        this.executor = new ParallelExecutor(options.threads());
+    }
+    
+    // Uses an existing symbol table and class path. They are not closed with the converter, so they can be shared.
+    public LegacyConverter(SymbolTable table, ClassPath classPath, ConversionOptions options) throws IOException {
+        this.api = table.api();
+        this.options = options;
+        this.ownsSymbols = false;
+        this.cache = options.cacheDirectory() == null ? null : ConversionCache.inCache(options.cacheDirectory(), options.cacheSize());
+        this.table = table;
+        this.cp = classPath;
+        this.executor = new ParallelExecutor(options.threads());
+    }
+    
+    // Converts all jobs and returns 0 if all of them succeeded. Up to as many jars as there are threads are converted
+    // at the same time. A jar that fails to convert does not stop the others.
+    public int convertAll(List<Job> jobs) throws IOException {
+        List<Future<Integer>> results = new ArrayList<>();
+        try (ParallelExecutor jarExecutor = new ParallelExecutor(Math.min(this.options.threads(), jobs.size()))) {
+            for (Job job : jobs) {
+                results.add(jarExecutor.submit(() -> {
+                    try {
+                        return this.convert(job.input(), job.output());
+                    } catch (IOException | RuntimeException e) {
+                        Log.error("Failed to convert " + job.input() + ": " + e);
+                        return 1;
+                    }
+                }));
+            }
+            int exit = 0;
+            for (Future<Integer> result : results) {
+                if (ParallelExecutor.await(result) != 0) {
+                    exit = 1;
+                }
+            }
+            return exit;
+        }
+    }
+    
+    public int convert(Path inputPath, Path outputPath) throws IOException {
         boolean success = true;
+        Log.info("Reading input: " + inputPath);
+        if (Files.exists(outputPath) && Files.isSameFile(inputPath, outputPath)) {
+            throw new IOException("Input and output must differ: " + inputPath);
+        }
         try (
-                SymbolTable table = new SymbolTable(api, javaPath);
-                ClassPath cp = new ClassPath(classPath)
+                ArchiveReader input = ArchiveReader.open(inputPath);
+                ArchiveWriter output = ArchiveWriter.create(outputPath)
         ) {
-            Log.info("Reading input.");
-            Files.deleteIfExists(outputPath);
-            try (
-                    FileSystem input = FileSystems.newFileSystem(URI.create("jar:" + inputPath.toUri()), Map.of());
-                    FileSystem output = FileSystems.newFileSystem(URI.create("jar:" + outputPath.toUri()), Map.of(
-                            "create", "true"
-                    ));
-                    ClassPath mainJar = new ClassPath(input)
-            ) {
-                ClassAccessor classes = ClassAccessor.of(mainJar, cp, table);
-                ClassHierarchy hierarchy = new ClassHierarchy(classes);
-
-                Manifest manifest;
-                if (Files.exists(input.getPath("/META-INF/MANIFEST.MF"))) {
-                    try (InputStream in = Files.newInputStream(input.getPath("/META-INF/MANIFEST.MF"))) {
-                        manifest = new Manifest(in);
-                    }
-                } else {
-                    manifest = new Manifest();
-                }
+            ClassPath mainJar = new ClassPath(input, this.options.classCacheSize());
+            ConversionSession session = new ConversionSession(this.table, ClassAccessor.of(mainJar, this.cp));
+            
+            // Frames of converted classes depend on the hierarchy of all classes in the input and on the class path.
+            @Nullable
+            String cacheEnvironment = this.cache == null ? null : this.api.version + "\n" + this.table.fingerprint() + "\n" + mainJar.fingerprint() + "\n" + this.cp.fingerprint();
 
-                if (manifest.getMainAttributes().containsKey("Multi-Release") && Boolean.parseBoolean(manifest.getMainAttributes().getValue("Multi-Release"))) {
-                    throw new IllegalStateException("Can't process multi-release jars.");
+            Manifest manifest;
+            ArchiveReader.Entry manifestEntry = input.get(MANIFEST);
+            if (manifestEntry != null) {
+                try (InputStream in = input.open(manifestEntry)) {
+                    manifest = new Manifest(in);
                 }
-                
-                @Nullable
-                Map<String, Set<String>> services = api.ordinal() <= LanguageLevel.JAVA_8.ordinal() ? new HashMap<>() : null;
+            } else {
+                manifest = new Manifest();
+            }
 
-                List<Path> dirs = new ArrayList<>();
-                List<Path> paths = new ArrayList<>();
-                try (Stream<Path> allPaths = Files.walk(input.getPath("/"))) {
-                    Path manifestPath = input.getPath("/META-INF/MANIFEST.MF").toAbsolutePath().normalize();
-                    allPaths.map(Path::toAbsolutePath)
-                            .map(Path::normalize)
-                            .filter(p -> !Objects.equals(p, manifestPath))
-                            .forEach(p -> {
-                                if (Files.isDirectory(p)) {
-                                    dirs.add(p);
-                                } else if (Files.isRegularFile(p)) {
-                                    paths.add(p);
-                                }
-                            });
-                }
+            if (this.options.multiRelease()) {
+                manifest.getMainAttributes().putValue("Multi-Release", "true");
+            }
+            
+            // Original classes, that are added to META-INF/versions for multi-release output.
+            @Nullable
+            List<Original> originals = this.options.multiRelease() ? new ArrayList<>() : null;
+            
+            @Nullable
+            Map<String, Set<String>> services = this.api.ordinal() <= LanguageLevel.JAVA_8.ordinal() ? new HashMap<>() : null;
 
-                for (Path dir : dirs) {
-                    Files.createDirectories(output.getPath(dir.toString()));
+            // The module descriptor is needed to complete the manifest, which is written first.
+            ArchiveReader.Entry moduleEntry = input.get("module-info.class");
+            if (moduleEntry != null && this.api.ordinal() <= LanguageLevel.JAVA_8.ordinal()) {
+                try (InputStream in = input.open(moduleEntry)) {
+                    ModuleDescriptor desc = ModuleDescriptor.read(in);
+                    if (desc.name() != null) {
+                        manifest.getMainAttributes().putValue("Automatic-Module-Name", desc.name());
+                    }
+                    if (desc.mainClass().isPresent() && !manifest.getMainAttributes().containsKey("Main-Class")) {
+                        manifest.getMainAttributes().putValue("Main-Class", desc.mainClass().get());
+                    }
+                    if (originals != null) {
+                        originals.add(new Original(moduleEntry, classFileVersion(input.read(moduleEntry))));
+                    }
+                    //noinspection ConstantValue
+                    if (services != null) {
+                        for (ModuleDescriptor.Provides provides : desc.provides()) {
+                            services.computeIfAbsent(provides.service(), k -> new HashSet<>()).addAll(provides.providers());
+                        }
+                    }
                 }
+            }
+            
+            // Generated entries use the time of the original manifest, so converting the same jar twice yields the same output.
+            int generatedTime = manifestEntry == null ? ZipWriter.dosTime(System.currentTimeMillis()) : manifestEntry.dosTime();
+            output.writeDirectory("META-INF/", generatedTime);
+            ByteArrayOutputStream manifestData = new ByteArrayOutputStream();
+            manifest.write(manifestData);
+            output.write(MANIFEST, manifestData.toByteArray(), generatedTime);
 
-                Path modulePath = input.getPath("/module-info.class").toAbsolutePath().normalize();
-                Path servicePath = input.getPath("/META-INF/services").toAbsolutePath().normalize();
-                for (Path path : paths) {
-                    Path target = output.getPath(path.toString());
-                    if (Objects.equals(modulePath, path) && api.ordinal() <= LanguageLevel.JAVA_8.ordinal()) {
-                        try (InputStream in = Files.newInputStream(path)) {
-                            ModuleDescriptor desc = ModuleDescriptor.read(in);
-                            if (desc.name() != null) {
-                                manifest.getMainAttributes().putValue("Automatic-Module-Name", desc.name());
-                            }
-                            if (desc.mainClass().isPresent() && !manifest.getMainAttributes().containsKey("Main-Class")) {
-                                manifest.getMainAttributes().putValue("Main-Class", desc.mainClass().get());
-                            }
-                            //noinspection ConstantValue
-                            if (services != null) {
-                                for (ModuleDescriptor.Provides provides : desc.provides()) {
-                                    services.computeIfAbsent(provides.service(), k -> new HashSet<>()).addAll(provides.providers());
-                                }
-                            }
-                        }
-                    } else if (path.startsWith(servicePath) && services != null) {
-                        Set<String> implementations = services.computeIfAbsent(path.getFileName().toString(), k -> new HashSet<>());
-                        try (Stream<String> lines = Files.lines(path, StandardCharsets.UTF_8)) {
-                            implementations.addAll(lines.map(String::strip).filter(str -> !str.isEmpty()).collect(Collectors.toSet()));
-                        }
-                    } else if (!Objects.equals("module-info.class", path.getFileName().toString()) && path.getFileName().toString().endsWith(".class")) {
-                        ClassReader cls;
-                        try (InputStream in = Files.newInputStream(path)) {
-                            cls = new ClassReader(in);
+            // Classes are converted in parallel but written in input order, so the output does not depend on the thread count.
+            Deque<PendingEntry> pending = new ArrayDeque<>();
+            int maxPending = this.options.threads() * PENDING_PER_THREAD;
+            // For each class in META-INF/versions of a multi-release input, the lowest version it is present in.
+            Map<String, Integer> versionedClasses = new HashMap<>();
+            for (ArchiveReader.Entry entry : input.entries()) {
+                String name = entry.name();
+                String fileName = name.substring(name.lastIndexOf('/') + 1);
+                if (MANIFEST.equals(name) || "META-INF/".equals(name) || (entry == moduleEntry && this.api.ordinal() <= LanguageLevel.JAVA_8.ordinal())) {
+                    continue;
+                } else if (name.startsWith(VERSIONS)) {
+                    // Versioned entries are only used by runtimes new enough to load them.
+                    int versionEnd = name.indexOf('/', VERSIONS.length());
+                    if (versionEnd > 0 && !entry.isDirectory()) {
+                        try {
+                            versionedClasses.merge(name.substring(versionEnd + 1), Integer.parseInt(name.substring(VERSIONS.length(), versionEnd)), Math::min);
+                        } catch (NumberFormatException e) {
+                            //
                         }
-                        ClassNode node = converter.convert(cls, table);
-                        if (node == null) {
-                            Files.copy(path, target, StandardCopyOption.COPY_ATTRIBUTES);
-                        } else {
-                            if (!table.check(node)) {
-                                success = false;
-                            }
-                            ClassWriter cw = hierarchy.createClassWriter();
-                            node.accept(cw);
-                            Files.write(target, cw.toByteArray(), StandardOpenOption.CREATE_NEW);
-                        }
-                    } else {
-                        Files.copy(path, target, StandardCopyOption.COPY_ATTRIBUTES);
                     }
+                    pending.add(new PendingEntry(input, entry, null));
+                } else if (name.startsWith(SERVICES) && !entry.isDirectory() && services != null) {
+                    Set<String> implementations = services.computeIfAbsent(fileName, k -> new HashSet<>());
+                    String content = new String(input.read(entry), StandardCharsets.UTF_8);
+                    implementations.addAll(content.lines().map(String::strip).filter(str -> !str.isEmpty()).collect(Collectors.toSet()));
+                } else if (!Objects.equals("module-info.class", fileName) && fileName.endsWith(".class")) {
+                    pending.add(new PendingEntry(input, entry, this.executor.submit(() -> this.convertClass(session, cacheEnvironment, input, entry))));
+                } else {
+                    pending.add(new PendingEntry(input, entry, null));
                 }
-
-                Files.createDirectories(output.getPath("/META-INF"));
-                try (OutputStream out = Files.newOutputStream(output.getPath("/META-INF/MANIFEST.MF"), StandardOpenOption.CREATE_NEW)) {
-                    manifest.write(out);
+                while (pending.size() > maxPending) {
+                    if (!pending.removeFirst().write(output, originals)) {
+                        success = false;
+                    }
+                }
+            }
+            while (!pending.isEmpty()) {
+                if (!pending.removeFirst().write(output, originals)) {
+                    success = false;
                 }
-                
-                if (services != null && !services.isEmpty()) {
-                    Files.createDirectories(output.getPath("/META-INF/services"));
-                    for (Map.Entry<String, Set<String>> service : services.entrySet()) {
-                        Files.writeString(output.getPath("/META-INF/services").resolve(service.getKey()), service.getValue().stream()
-                                .sorted().map(provider -> provider + "\n").collect(Collectors.joining()), StandardOpenOption.CREATE_NEW);
+            }
+            
+            if (originals != null && !originals.isEmpty()) {
+                // All originals go into the same version, as original and converted classes can't always be mixed
+                // (e.g. nest mates that were converted to package private access).
+                int version = Math.max(9, originals.stream().mapToInt(Original::version).max().orElse(9));
+                for (Original original : originals) {
+                    // If the input has its own version of a class for a runtime that would load the original, keep that.
+                    Integer versioned = versionedClasses.get(original.entry().name());
+                    if (versioned == null || versioned > version) {
+                        output.copy(input, original.entry(), VERSIONS + version + "/" + original.entry().name());
                     }
                 }
             }
+            
+            if (services != null && !services.isEmpty()) {
+                for (Map.Entry<String, Set<String>> service : services.entrySet()) {
+                    output.write(SERVICES + service.getKey(), service.getValue().stream()
+                            .sorted().map(provider -> provider + "\n").collect(Collectors.joining()).getBytes(StandardCharsets.UTF_8), generatedTime);
+                }
+            }
+            output.finish();
         }
         if (!success) {
-            Log.error("Symbol table match failed. The jar file was converted but relies on members not present in the target version.");
+            Log.error("Symbol table match failed for " + inputPath.getFileName() + ". The jar file was converted but relies on members not present in the target version.");
             return 1;
         } else {
-            Log.info("Done");
+            Log.info("Done: " + inputPath.getFileName());
             return 0;
         }
     }
     
-    public static FileSystem jarFS(Path path) throws IOException {
-        try {
-            return FileSystems.getFileSystem(URI.create("jar:" + path.toAbsolutePath().normalize().toUri()));
-        } catch (FileSystemNotFoundException e) {
-            return FileSystems.newFileSystem(URI.create("jar:" + path.toAbsolutePath().normalize().toUri()), Map.of());
+    private ConvertedClass convertClass(ConversionSession session, @Nullable String cacheEnvironment, ArchiveReader input, ArchiveReader.Entry entry) throws IOException {
+        try (InputStream in = input.open(entry)) {
+            if (!session.needsConversion(in.readNBytes(8))) {
+                return new ConvertedClass(null, List.of(), List.of(), 0);
+            }
+        }
+        byte[] data = input.read(entry);
+        int version = classFileVersion(data);
+        String cacheKey = this.cache == null || cacheEnvironment == null ? null : this.cache.key(cacheEnvironment, data);
+        if (this.cache != null && cacheKey != null) {
+            ConversionCache.Entry cached = this.cache.get(cacheKey);
+            if (cached != null) {
+                return new ConvertedClass(cached.data(), cached.errors(), cached.conversionErrors(), version);
+            }
+        }
+        ConversionSession.Result result = session.convert(data);
+        if (!result.converted()) {
+            return new ConvertedClass(null, List.of(), List.of(), 0);
+        } else {
+            ConvertedClass converted = new ConvertedClass(result.data(), result.errors(), result.conversionErrors(), version);
+            if (this.cache != null && cacheKey != null) {
+                this.cache.put(cacheKey, new ConversionCache.Entry(converted.data(), converted.errors(), converted.conversionErrors()));
+            }
+            return converted;
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try (this.executor) {
+            if (this.cache != null) {
+                this.cache.evict();
+            }
+        } finally {
+            if (this.ownsSymbols) {
+                try (this.cp) {
+                    this.table.close();
+                }
+            }
+        }
+    }
+    
+    // The java version, a class file was compiled for.
+    private static int classFileVersion(byte[] data) {
+        return data.length < 8 ? 0 : (((data[6] & 0xFF) << 8) | (data[7] & 0xFF)) - 44;
+    }
+    
+    public record Job(Path input, Path output) {}
+    
+    // data is null if the class does not need to be converted. Errors from the symbol table check and other errors
+    // found during conversion are logged, when the class is written, so they appear in input order. Only errors from
+    // the symbol table check fail the conversion.
+    // version is the java version of the original class.
+    private record ConvertedClass(@Nullable byte[] data, List<String> errors, List<String> conversionErrors, int version) {}
+    
+    private record Original(ArchiveReader.Entry entry, int version) {}
+    
+    private record PendingEntry(ArchiveReader input, ArchiveReader.Entry entry, @Nullable Future<ConvertedClass> conversion) {
+        
+        // Converted classes are added to originals, if it is not null.
+        public boolean write(ArchiveWriter output, @Nullable List<Original> originals) throws IOException {
+            ConvertedClass converted = this.conversion == null ? null : ParallelExecutor.await(this.conversion);
+            if (converted == null || converted.data() == null) {
+                output.copy(this.input, this.entry);
+            } else {
+                output.write(this.entry.name(), converted.data(), this.entry.dosTime());
+                if (originals != null) {
+                    originals.add(new Original(this.entry, converted.version()));
+                }
+            }
+            if (converted == null) {
+                return true;
+            } else {
+                converted.conversionErrors().forEach(Log::error);
+                converted.errors().forEach(Log::error);
+                return converted.errors().isEmpty();
+            }
         }
     }
 }
@@ -6,11 +6,16 @@ import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 import joptsimple.util.PathConverter;
 import joptsimple.util.PathProperties;
+import org.moddingx.ljc.daemon.ConversionDaemon;
+import org.moddingx.ljc.daemon.DaemonClient;
+import org.moddingx.ljc.daemon.DaemonProtocol;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Main {
@@ -20,8 +25,18 @@ public class Main {
         OptionSpec<Path> specJava = options.acceptsAll(List.of("java"), "The Java installation to use").withRequiredArg().withValuesConvertedBy(new PathConverter(PathProperties.DIRECTORY_EXISTING)).defaultsTo(Paths.get(System.getProperty("java.home")).toAbsolutePath().normalize());
         OptionSpec<Path> specClassPath = options.acceptsAll(List.of("cp"), "The runtime class path").withRequiredArg().withValuesConvertedBy(new PathConverter(PathProperties.READABLE)).withValuesSeparatedBy(File.pathSeparator);
         OptionSpec<Integer> specTarget = options.acceptsAll(List.of("target"), "The target language level").withRequiredArg().ofType(Integer.class);
-        OptionSpec<Path> specInput = options.acceptsAll(List.of("input"), "The input jar file").withRequiredArg().withValuesConvertedBy(new PathConverter(PathProperties.FILE_EXISTING));
-        OptionSpec<Path> specOutput = options.acceptsAll(List.of("output"), "The output jar file").withRequiredArg().withValuesConvertedBy(new PathConverter());
+        OptionSpec<Path> specInput = options.acceptsAll(List.of("input"), "The input jar file or directory. May be given multiple times").withRequiredArg().withValuesConvertedBy(new PathConverter(PathProperties.READABLE));
+        OptionSpec<Path> specOutput = options.acceptsAll(List.of("output"), "The output jar file or directory. Must be given once for every input").withRequiredArg().withValuesConvertedBy(new PathConverter());
+        OptionSpec<Path> specBatch = options.acceptsAll(List.of("batch"), "A file that lists an input and an output jar separated by a tab on each line").withRequiredArg().withValuesConvertedBy(new PathConverter(PathProperties.FILE_EXISTING));
+        OptionSpec<Path> specCache = options.acceptsAll(List.of("cache"), "A directory to cache converted classes").withRequiredArg().withValuesConvertedBy(new PathConverter());
+        OptionSpec<Long> specCacheSize = options.acceptsAll(List.of("cache-size"), "The maximum size of the cache in megabytes").withRequiredArg().ofType(Long.class).defaultsTo(ConversionOptions.DEFAULT_CACHE_SIZE / (1024 * 1024));
+        OptionSpec<Long> specClassCacheSize = options.acceptsAll(List.of("class-cache-size"), "The maximum size of parsed classes kept in memory for the class path and for the symbol table in megabytes").withRequiredArg().ofType(Long.class).defaultsTo(ConversionOptions.DEFAULT_CLASS_CACHE_SIZE / (1024 * 1024));
+        OptionSpec<Integer> specThreads = options.acceptsAll(List.of("threads"), "The number of threads used to convert classes").withRequiredArg().ofType(Integer.class).defaultsTo(1);
+        OptionSpec<Void> specMultiRelease = options.acceptsAll(List.of("multi-release"), "Keep the original classes in META-INF/versions, so newer Java versions use them");
+        OptionSpec<Path> specDaemon = options.acceptsAll(List.of("daemon"), "Run a daemon that keeps symbol data loaded and listens for conversions on the given socket").withRequiredArg().withValuesConvertedBy(new PathConverter());
+        OptionSpec<Path> specConnect = options.acceptsAll(List.of("connect"), "Let the daemon listening on the given socket do the conversion").withRequiredArg().withValuesConvertedBy(new PathConverter());
+        OptionSpec<Void> specStats = options.acceptsAll(List.of("stats"), "Print cache statistics of the daemon");
+        OptionSpec<Void> specStop = options.acceptsAll(List.of("stop"), "Stop the daemon");
         OptionSet set;
         try {
             set = options.parse(args);
@@ -29,10 +44,45 @@ public class Main {
             options.printHelpOn(System.err);
             return;
         }
-        if (!set.has(specTarget) || !set.has(specInput) || !set.has(specOutput)) {
+        if (set.valueOf(specThreads) < 1) {
+            System.err.println("Invalid thread count: " + set.valueOf(specThreads));
+            options.printHelpOn(System.err);
+            return;
+        }
+        if (set.valueOf(specCacheSize) < 0) {
+            System.err.println("Invalid cache size: " + set.valueOf(specCacheSize));
+            options.printHelpOn(System.err);
+            return;
+        }
+        if (set.valueOf(specClassCacheSize) < 0) {
+            System.err.println("Invalid class cache size: " + set.valueOf(specClassCacheSize));
+            options.printHelpOn(System.err);
+            return;
+        }
+        if (set.has(specDaemon)) {
+            Log.configureLogs(System.out, System.err, null);
+            try (ConversionDaemon daemon = new ConversionDaemon(set.valueOf(specDaemon))) {
+                daemon.run();
+            }
+            return;
+        } else if (set.has(specStats) || set.has(specStop)) {
+            if (!set.has(specConnect)) {
+                System.err.println("Missing required option: " + specConnect);
+                options.printHelpOn(System.err);
+                return;
+            }
+            Log.configureLogs(System.out, System.err, null);
+            System.exit(set.has(specStop) ? DaemonClient.stop(set.valueOf(specConnect)) : DaemonClient.stats(set.valueOf(specConnect)));
+        }
+        if (!set.has(specTarget) || (!set.has(specBatch) && (!set.has(specInput) || !set.has(specOutput)))) {
             if (!set.has(specTarget)) System.err.println("Missing required option: " + specTarget);
-            if (!set.has(specInput)) System.err.println("Missing required option: " + specInput);
-            if (!set.has(specOutput)) System.err.println("Missing required option: " + specOutput);
+            if (!set.has(specBatch) && !set.has(specInput)) System.err.println("Missing required option: " + specInput);
+            if (!set.has(specBatch) && !set.has(specOutput)) System.err.println("Missing required option: " + specOutput);
+            options.printHelpOn(System.err);
+            return;
+        }
+        if (set.valuesOf(specInput).size() != set.valuesOf(specOutput).size()) {
+            System.err.println("Each input needs exactly one output.");
             options.printHelpOn(System.err);
             return;
         }
@@ -42,10 +92,47 @@ public class Main {
         
         LanguageLevel api = LanguageLevel.of(set.valueOf(specTarget));
         
-        Path inputPath = set.valueOf(specInput).toAbsolutePath().normalize();
-        Path outputPath = set.valueOf(specOutput).toAbsolutePath().normalize();
+        List<LegacyConverter.Job> jobs = new ArrayList<>();
+        for (int i = 0; i < set.valuesOf(specInput).size(); i++) {
+            jobs.add(new LegacyConverter.Job(set.valuesOf(specInput).get(i).toAbsolutePath().normalize(), set.valuesOf(specOutput).get(i).toAbsolutePath().normalize()));
+        }
+        for (Path batchFile : set.valuesOf(specBatch)) {
+            jobs.addAll(readBatch(batchFile.toAbsolutePath().normalize()));
+        }
+        ConversionOptions conversionOptions = ConversionOptions.DEFAULT
+                .withThreads(set.valueOf(specThreads))
+                .withCache(set.has(specCache) ? set.valueOf(specCache).toAbsolutePath().normalize() : null, set.valueOf(specCacheSize) * 1024 * 1024)
+                .withMultiRelease(set.has(specMultiRelease))
+                .withClassCacheSize(set.valueOf(specClassCacheSize) * 1024 * 1024);
 
         Log.configureLogs(System.out, System.err, null);
-        System.exit(LegacyConverter.run(api, inputPath, outputPath, javaPath, classPath));
+        if (set.has(specConnect)) {
+            System.exit(DaemonClient.convert(set.valueOf(specConnect), new DaemonProtocol.ConvertRequest(api, javaPath, classPath, jobs, conversionOptions)));
+        }
+        // Exit after the converter is closed, so the cache is evicted.
+        int exitCode;
+        try (LegacyConverter converter = new LegacyConverter(api, javaPath, classPath, conversionOptions)) {
+            if (jobs.size() == 1) {
+                exitCode = converter.convert(jobs.get(0).input(), jobs.get(0).output());
+            } else {
+                exitCode = converter.convertAll(jobs);
+            }
+        }
+        System.exit(exitCode);
+    }
+    
+    // Empty lines and lines starting with # are ignored. Relative paths are resolved against the directory of the batch file.
+    private static List<LegacyConverter.Job> readBatch(Path batchFile) throws IOException {
+        Path base = batchFile.getParent();
+        List<LegacyConverter.Job> jobs = new ArrayList<>();
+        for (String line : Files.readAllLines(batchFile)) {
+            if (line.isBlank() || line.strip().startsWith("#")) continue;
+            String[] parts = line.split("\t");
+            if (parts.length != 2 || parts[0].isBlank() || parts[1].isBlank()) {
+                throw new IOException("Invalid line in batch file " + batchFile + ": " + line);
+            }
+            jobs.add(new LegacyConverter.Job(base.resolve(parts[0].strip()).normalize(), base.resolve(parts[1].strip()).normalize()));
+        }
+        return jobs;
     }
 }
@@ -0,0 +1,77 @@
+package org.moddingx.ljc.agent;
+
+import jakarta.annotation.Nullable;
+import org.moddingx.ljc.ConversionOptions;
+import org.moddingx.ljc.LanguageLevel;
+import org.moddingx.ljc.Log;
+import org.moddingx.ljc.cache.ConversionCache;
+import org.moddingx.ljc.symbol.SymbolDatabase;
+
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Converts classes when they are loaded, e.g. -javaagent:ljc.jar=target=17,cache=/path/to/cache
+// Options are separated by commas:
+//   target            The language level to convert to. Defaults to the version of the running JVM.
+//   java              The java installation to load symbol data from. Defaults to the running JVM.
+//   cache             A directory to cache converted classes in.
+//   cache-size        The maximum size of the cache in megabytes.
+//   class-cache-size  The maximum size of parsed JDK classes kept in memory in megabytes.
+//   stats             Print statistics when the JVM exits.
+//   verbose           Log every converted class.
+public class ConversionAgent {
+
+    private static final Set<String> OPTIONS = Set.of("target", "java", "cache", "cache-size", "class-cache-size", "stats", "verbose");
+
+    public static void premain(@Nullable String args, Instrumentation inst) throws IOException {
+        install(args, inst);
+    }
+
+    public static void agentmain(@Nullable String args, Instrumentation inst) throws IOException {
+        install(args, inst);
+    }
+
+    public static ConversionTransformer install(@Nullable String args, Instrumentation inst) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        if (args != null) {
+            for (String option : args.split(",")) {
+                if (option.isBlank()) continue;
+                int idx = option.indexOf('=');
+                options.put(option.substring(0, idx < 0 ? option.length() : idx).strip(), idx < 0 ? "" : option.substring(idx + 1).strip());
+            }
+        }
+        for (String option : options.keySet()) {
+            if (!OPTIONS.contains(option)) {
+                throw new IllegalArgumentException("Unknown agent option: " + option);
+            }
+        }
+
+        Log.configureLogs(options.containsKey("verbose") ? System.err : null, System.err, null);
+        LanguageLevel api = LanguageLevel.of(options.containsKey("target") ? Integer.parseInt(options.get("target")) : Runtime.version().feature());
+        Path javaPath = Path.of(options.getOrDefault("java", System.getProperty("java.home"))).toAbsolutePath().normalize();
+        long cacheSize = options.containsKey("cache-size") ? Long.parseLong(options.get("cache-size")) * 1024 * 1024 : ConversionOptions.DEFAULT_CACHE_SIZE;
+        @Nullable ConversionCache cache = options.containsKey("cache") ? ConversionCache.inCache(Path.of(options.get("cache")), cacheSize) : null;
+        @Nullable SymbolDatabase symbols = options.containsKey("cache") ? SymbolDatabase.inCache(Path.of(options.get("cache"))) : null;
+        long classCacheSize = options.containsKey("class-cache-size") ? Long.parseLong(options.get("class-cache-size")) * 1024 * 1024 : ConversionOptions.DEFAULT_CLASS_CACHE_SIZE;
+
+        ConversionTransformer transformer = new ConversionTransformer(api, javaPath, cache, symbols, classCacheSize);
+        inst.addTransformer(transformer);
+        boolean stats = options.containsKey("stats");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            inst.removeTransformer(transformer);
+            if (stats) {
+                System.err.println("[ljc] " + transformer.stats());
+            }
+            try {
+                transformer.close();
+            } catch (IOException e) {
+                System.err.println("[ljc] Failed to close converter: " + e);
+            }
+        }, "ljc-agent-shutdown"));
+        return transformer;
+    }
+}
@@ -0,0 +1,183 @@
+package org.moddingx.ljc.agent;
+
+import jakarta.annotation.Nullable;
+import org.moddingx.ljc.ConversionSession;
+import org.moddingx.ljc.LanguageLevel;
+import org.moddingx.ljc.Log;
+import org.moddingx.ljc.cache.ConversionCache;
+import org.moddingx.ljc.convert.ClassConverter;
+import org.moddingx.ljc.symbol.SymbolDatabase;
+import org.moddingx.ljc.symbol.SymbolTable;
+import org.moddingx.ljc.util.ClassHeader;
+import org.moddingx.ljc.util.ClassPath;
+import org.objectweb.asm.ClassReader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.nio.file.Path;
+import java.security.ProtectionDomain;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+// Converts classes while they are loaded. Symbol data is only loaded, when the first class that needs conversion is
+// not found in the cache, so classes that don't need conversion only cost a look at their version. Classes of the JDK
+// itself are never converted.
+public class ConversionTransformer implements ClassFileTransformer, Closeable {
+
+    private final LanguageLevel api;
+    private final Path javaPath;
+    private final ClassConverter converter;
+    @Nullable private final ConversionCache cache;
+    @Nullable private final SymbolDatabase symbols;
+    private final long classCacheSize;
+    // The class loader of the class being converted, used to compute the class hierarchy.
+    private final ThreadLocal<ClassLoader> loader;
+    // Classes loaded by the converter itself while it converts a class are not converted.
+    private final ThreadLocal<Boolean> active;
+    private final LongAdder classes;
+    private final LongAdder converted;
+    private final LongAdder cacheHits;
+    private final LongAdder failures;
+    private final LongAdder nanos;
+    @Nullable private SymbolTable table;
+    @Nullable private volatile ConversionSession session;
+    @Nullable private volatile String cacheEnvironment;
+
+    public ConversionTransformer(LanguageLevel api, Path javaPath, @Nullable ConversionCache cache, @Nullable SymbolDatabase symbols, long classCacheSize) {
+        this.api = api;
+        this.javaPath = javaPath;
+        this.converter = new ClassConverter(api);
+        this.cache = cache;
+        this.symbols = symbols;
+        this.classCacheSize = classCacheSize;
+        this.loader = new ThreadLocal<>();
+        this.active = ThreadLocal.withInitial(() -> false);
+        this.classes = new LongAdder();
+        this.converted = new LongAdder();
+        this.cacheHits = new LongAdder();
+        this.failures = new LongAdder();
+        this.nanos = new LongAdder();
+    }
+
+    @Nullable
+    @Override
+    public byte[] transform(@Nullable ClassLoader loader, @Nullable String className, @Nullable Class<?> classBeingRedefined, @Nullable ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        if (this.active.get() || loader == null || loader == ClassLoader.getPlatformClassLoader()) {
+            return null;
+        }
+        long start = System.nanoTime();
+        this.classes.increment();
+        this.active.set(true);
+        this.loader.set(loader);
+        try {
+            if (!this.converter.needsConversion(classfileBuffer)) {
+                return null;
+            }
+            // The cache environment only covers the application class path. Frames of classes from other loaders depend
+            // on classes, the loader finds elsewhere, so they are not cached.
+            boolean cacheable = loader == ClassLoader.getSystemClassLoader();
+            String cacheKey = this.cache == null || !cacheable ? null : this.cache.key(this.cacheEnvironment(), classfileBuffer);
+            if (this.cache != null && cacheKey != null) {
+                ConversionCache.Entry cached = this.cache.get(cacheKey);
+                if (cached != null) {
+                    this.cacheHits.increment();
+                    this.converted.increment();
+                    cached.conversionErrors().forEach(Log::error);
+                    cached.errors().forEach(Log::error);
+                    return cached.data();
+                }
+            }
+            ConversionSession.Result result = this.session().convert(classfileBuffer);
+            if (!result.converted()) {
+                return null;
+            }
+            result.conversionErrors().forEach(Log::error);
+            result.errors().forEach(Log::error);
+            if (this.cache != null && cacheKey != null) {
+                this.cache.put(cacheKey, new ConversionCache.Entry(result.data(), result.errors(), result.conversionErrors()));
+            }
+            this.converted.increment();
+            return result.data();
+        } catch (IOException | RuntimeException e) {
+            // Exceptions thrown from a transformer are silently dropped by the JVM.
+            this.failures.increment();
+            Log.error("Failed to convert " + className + ": " + e);
+            return null;
+        } finally {
+            this.loader.remove();
+            this.active.set(false);
+            this.nanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private ConversionSession session() throws IOException {
+        ConversionSession session = this.session;
+        if (session == null) {
+            synchronized (this) {
+                session = this.session;
+                if (session == null) {
+                    long start = System.nanoTime();
+                    Log.info("Building Symbol Table.");
+                    this.table = new SymbolTable(this.api, this.javaPath, this.classCacheSize, this.symbols);
+                    session = new ConversionSession(this.table, this::find);
+                    this.session = session;
+                    Log.info("Loaded symbol data in " + ((System.nanoTime() - start) / 1000000) + "ms");
+                }
+            }
+        }
+        return session;
+    }
+
+    // Only looks at file attributes, so cached classes can be used without loading symbol data.
+    private String cacheEnvironment() throws IOException {
+        String cacheEnvironment = this.cacheEnvironment;
+        if (cacheEnvironment == null) {
+            // The class hierarchy depends on the application class path, so it is part of the cache environment.
+            String classPath = System.getProperty("java.class.path", "");
+            List<Path> paths = Arrays.stream(classPath.split(File.pathSeparator)).filter(str -> !str.isEmpty()).map(Path::of).toList();
+            cacheEnvironment = this.api.version + "\n" + SymbolTable.fingerprint(this.javaPath) + "\n" + ClassPath.fingerprint(paths);
+            this.cacheEnvironment = cacheEnvironment;
+        }
+        return cacheEnvironment;
+    }
+
+    // Class hierarchies are shared between all class loaders, classes are assumed to have the same supertypes in all of them.
+    @Nullable
+    private ClassHeader find(String cls) throws IOException {
+        ClassLoader loader = this.loader.get();
+        try (InputStream in = loader == null ? ClassLoader.getSystemResourceAsStream(cls + ".class") : loader.getResourceAsStream(cls + ".class")) {
+            if (in == null) return null;
+            return ClassHeader.read(new ClassReader(in));
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(this.classes.sum(), this.converted.sum(), this.cacheHits.sum(), this.failures.sum(), this.nanos.sum());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (this.cache != null) {
+                this.cache.evict();
+            }
+        } finally {
+            if (this.table != null) {
+                this.table.close();
+            }
+        }
+    }
+
+    // nanos is the total time spent in the transformer, including the time to load symbol data.
+    public record Stats(long classes, long converted, long cacheHits, long failures, long nanos) {
+
+        @Override
+        public String toString() {
+            return this.classes + " classes loaded, " + this.converted + " converted (" + this.cacheHits + " from cache), " + this.failures + " failed, " + (this.nanos / 1000000) + "ms spent converting";
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.moddingx.ljc.archive;
+
+import jakarta.annotation.Nullable;
+import org.moddingx.ljc.zip.ZipReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// Files to convert, either from a jar or from a directory. Entry names always use / as separator and
+// directory entries end with a /.
+public interface ArchiveReader extends Closeable {
+
+    Path path();
+
+    // All entries in a stable order.
+    List<? extends Entry> entries();
+
+    @Nullable
+    Entry get(String name);
+
+    InputStream open(Entry entry) throws IOException;
+
+    byte[] read(Entry entry) throws IOException;
+
+    // The entry data from its position to its limit. The buffer may be a read-only view of the archive, which must
+    // not be used once the archive is closed.
+    default ByteBuffer buffer(Entry entry) throws IOException {
+        return ByteBuffer.wrap(this.read(entry));
+    }
+
+    // Identifies the classes in the archive. Changes, if any class is added, removed or modified.
+    String fingerprint();
+
+    static ArchiveReader open(Path path) throws IOException {
+        return Files.isDirectory(path) ? new DirectoryReader(path) : new ZipReader(path);
+    }
+
+    interface Entry {
+
+        String name();
+
+        // Modification time in MS-DOS format, as stored in zip files.
+        int dosTime();
+
+        default boolean isDirectory() {
+            return this.name().endsWith("/");
+        }
+    }
+}
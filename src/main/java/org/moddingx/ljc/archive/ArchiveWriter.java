@@ -0,0 +1,45 @@
+package org.moddingx.ljc.archive;
+
+import org.moddingx.ljc.zip.ZipWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Receives converted files. Implementations are not thread-safe.
+public interface ArchiveWriter extends Closeable {
+
+    void writeDirectory(String name, int dosTime) throws IOException;
+
+    void write(String name, byte[] data, int dosTime) throws IOException;
+
+    // Writes an entry that did not change during conversion.
+    default void copy(ArchiveReader reader, ArchiveReader.Entry entry) throws IOException {
+        this.copy(reader, entry, entry.name());
+    }
+
+    // Writes an entry that did not change during conversion under a different name.
+    void copy(ArchiveReader reader, ArchiveReader.Entry entry, String name) throws IOException;
+
+    // Called once all files were written. A writer that is closed without being finished keeps earlier output, that
+    // was not written again.
+    default void finish() throws IOException {
+        //
+    }
+
+    // A directory is written, if the output is an existing directory, otherwise a jar file.
+    // An existing jar file is replaced.
+    static ArchiveWriter create(Path path) throws IOException {
+        if (isDirectory(path)) {
+            return new DirectoryWriter(path);
+        } else {
+            Files.deleteIfExists(path);
+            return new ZipWriter(path);
+        }
+    }
+
+    static boolean isDirectory(Path path) {
+        return Files.isDirectory(path);
+    }
+}
@@ -0,0 +1,108 @@
+package org.moddingx.ljc.archive;
+
+import jakarta.annotation.Nullable;
+import org.moddingx.ljc.util.Fingerprint;
+import org.moddingx.ljc.zip.ZipWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Reads the files in a directory like the entries of a jar. The directory contents are listed once.
+public class DirectoryReader implements ArchiveReader {
+
+    private final Path path;
+    private final List<Entry> entries;
+    private final Map<String, Entry> entryMap;
+    private final String fingerprint;
+
+    public DirectoryReader(Path path) throws IOException {
+        this.path = path.toAbsolutePath().normalize();
+        List<Entry> entries = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(this.path)) {
+            // The file list of an earlier conversion into this directory is not part of the output.
+            Path fileList = this.path.resolve(DirectoryWriter.FILE_LIST);
+            for (Path file : paths.filter(p -> !p.equals(this.path) && !p.equals(fileList)).toList()) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                Path relative = this.path.relativize(file);
+                String name = IntStream.range(0, relative.getNameCount())
+                        .mapToObj(relative::getName)
+                        .map(Path::toString)
+                        .collect(Collectors.joining("/"));
+                if (attributes.isDirectory()) {
+                    entries.add(new Entry(name + "/", file, attributes.lastModifiedTime().toMillis(), 0));
+                } else if (attributes.isRegularFile()) {
+                    entries.add(new Entry(name, file, attributes.lastModifiedTime().toMillis(), attributes.size()));
+                }
+            }
+        }
+        entries.sort(Comparator.comparing(Entry::name));
+        this.entries = List.copyOf(entries);
+        this.entryMap = this.entries.stream().collect(Collectors.toUnmodifiableMap(Entry::name, e -> e));
+        Fingerprint fp = new Fingerprint();
+        for (Entry entry : this.entries) {
+            if (entry.name().endsWith(".class")) {
+                fp.add(entry.name()).add(entry.size()).add(entry.lastModified());
+            }
+        }
+        this.fingerprint = fp.toString();
+    }
+
+    @Override
+    public Path path() {
+        return this.path;
+    }
+
+    @Override
+    public List<Entry> entries() {
+        return this.entries;
+    }
+
+    @Nullable
+    @Override
+    public Entry get(String name) {
+        return this.entryMap.get(name);
+    }
+
+    @Override
+    public InputStream open(ArchiveReader.Entry entry) throws IOException {
+        return Files.newInputStream(this.file(entry));
+    }
+
+    @Override
+    public byte[] read(ArchiveReader.Entry entry) throws IOException {
+        return Files.readAllBytes(this.file(entry));
+    }
+
+    @Override
+    public String fingerprint() {
+        return this.fingerprint;
+    }
+
+    @Override
+    public void close() {
+        //
+    }
+
+    private Path file(ArchiveReader.Entry entry) throws IOException {
+        if (entry instanceof Entry e && this.entryMap.get(e.name()) == e) {
+            return e.file();
+        } else {
+            throw new IOException("Entry " + entry.name() + " does not belong to " + this.path);
+        }
+    }
+
+    public record Entry(String name, Path file, long lastModified, long size) implements ArchiveReader.Entry {
+
+        @Override
+        public int dosTime() {
+            return ZipWriter.dosTime(this.lastModified);
+        }
+    }
+}
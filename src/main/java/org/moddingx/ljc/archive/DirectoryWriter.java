@@ -0,0 +1,166 @@
+package org.moddingx.ljc.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Writes converted files into a directory. Files that are already up to date are not touched, unchanged files from
+// an input directory are hard-linked where possible. Files are always replaced, never written in place, so writing
+// never modifies the target of a hard link.
+// The directory holds a list of the files written into it. Once finished, files from the last conversion that were
+// not written again are removed. Other files are never removed, a directory that is not empty and has no such list
+// is not used as output.
+public class DirectoryWriter implements ArchiveWriter {
+
+    public static final String FILE_LIST = ".ljc-output";
+
+    private final Path path;
+    private final Path fileList;
+    // Files and directories of earlier conversions
+    private final Set<Path> previous;
+    private final Set<Path> written;
+    private boolean finished;
+
+    public DirectoryWriter(Path path) throws IOException {
+        this.path = path.toAbsolutePath().normalize();
+        this.fileList = this.path.resolve(FILE_LIST);
+        this.previous = new HashSet<>();
+        this.written = new HashSet<>();
+        this.finished = false;
+        Files.createDirectories(this.path);
+        if (Files.isRegularFile(this.fileList)) {
+            for (String line : Files.readAllLines(this.fileList, StandardCharsets.UTF_8)) {
+                if (line.isEmpty()) continue;
+                Path file = this.path.resolve(line).normalize();
+                if (file.startsWith(this.path) && !file.equals(this.path) && !file.equals(this.fileList)) {
+                    this.previous.add(file);
+                }
+            }
+        } else {
+            try (Stream<Path> contents = Files.list(this.path)) {
+                if (contents.findAny().isPresent()) {
+                    throw new IOException("Output directory is not empty and does not hold the output of an earlier conversion: " + this.path);
+                }
+            }
+            // Written right away, so the directory is recognised, even if this conversion does not complete.
+            this.writeFileList(Set.of());
+        }
+    }
+
+    @Override
+    public void writeDirectory(String name, int dosTime) throws IOException {
+        Path target = this.target(name);
+        Files.createDirectories(target);
+    }
+
+    @Override
+    public void write(String name, byte[] data, int dosTime) throws IOException {
+        if (name.endsWith("/")) {
+            throw new IOException("Invalid file name: " + name);
+        }
+        Path target = this.target(name);
+        if (Files.isRegularFile(target) && Files.size(target) == data.length && Arrays.equals(Files.readAllBytes(target), data)) {
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, data);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public void copy(ArchiveReader reader, ArchiveReader.Entry entry, String name) throws IOException {
+        if (entry.isDirectory()) {
+            this.writeDirectory(name, entry.dosTime());
+        } else if (entry instanceof DirectoryReader.Entry dirEntry) {
+            Path target = this.target(name);
+            if (Files.exists(target)) {
+                if (Files.isSameFile(target, dirEntry.file())) return;
+                BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+                if (attributes.isRegularFile() && attributes.size() == dirEntry.size() && attributes.lastModifiedTime().toMillis() == dirEntry.lastModified()) return;
+            }
+            Files.createDirectories(target.getParent());
+            Path tmp = target.resolveSibling(target.getFileName() + ".link.tmp");
+            try {
+                Files.deleteIfExists(tmp);
+                try {
+                    Files.createLink(tmp, dirEntry.file());
+                } catch (UnsupportedOperationException | IOException e) {
+                    // Different file stores or no hard link support
+                    try (InputStream in = reader.open(entry)) {
+                        Files.copy(in, tmp);
+                    }
+                    Files.setLastModifiedTime(tmp, FileTime.fromMillis(dirEntry.lastModified()));
+                }
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } else {
+            this.write(name, reader.read(entry), entry.dosTime());
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        // Deepest first, so directories are empty when they are checked.
+        List<Path> stale = this.previous.stream().filter(p -> !this.written.contains(p)).sorted(Comparator.reverseOrder()).toList();
+        for (Path file : stale) {
+            if (Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+                try (Stream<Path> contents = Files.list(file)) {
+                    if (contents.findAny().isPresent()) continue;
+                }
+            }
+            Files.deleteIfExists(file);
+        }
+        this.writeFileList(this.written);
+        this.finished = true;
+    }
+
+    // Unfinished output keeps the files of earlier conversions, so they are still listed to be removed later.
+    @Override
+    public void close() throws IOException {
+        if (!this.finished) {
+            Set<Path> files = new HashSet<>(this.previous);
+            files.addAll(this.written);
+            this.writeFileList(files);
+        }
+    }
+
+    private void writeFileList(Set<Path> files) throws IOException {
+        List<String> lines = files.stream().map(p -> this.path.relativize(p).toString().replace(p.getFileSystem().getSeparator(), "/")).sorted().toList();
+        Path tmp = Files.createTempFile(this.path, FILE_LIST, ".tmp");
+        try {
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            Files.move(tmp, this.fileList, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Resolves an entry name against the output directory, rejecting names that point outside of it.
+    private Path target(String name) throws IOException {
+        String fileName = name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+        Path target = this.path.resolve(fileName).normalize();
+        if (!target.startsWith(this.path) || target.equals(this.path) || target.equals(this.fileList)) {
+            throw new IOException("Invalid entry name: " + name);
+        }
+        // Directories may already be known as parent of an earlier entry.
+        if (!this.written.add(target) && !name.endsWith("/")) {
+            throw new IOException("Duplicate entry: " + name);
+        }
+        for (Path parent = target.getParent(); parent != null && !parent.equals(this.path); parent = parent.getParent()) {
+            this.written.add(parent);
+        }
+        return target;
+    }
+}
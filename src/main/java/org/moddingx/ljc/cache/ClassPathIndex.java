@@ -0,0 +1,360 @@
+package org.moddingx.ljc.cache;
+
+import jakarta.annotation.Nullable;
+import org.moddingx.ljc.archive.ArchiveReader;
+import org.moddingx.ljc.util.ClassAccessor;
+import org.moddingx.ljc.util.ClassHeader;
+import org.moddingx.ljc.util.Fingerprint;
+import org.moddingx.ljc.util.RecordTable;
+import org.objectweb.asm.ClassReader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ObjIntConsumer;
+
+// Stores the class headers of jar files on disk, so jars that did not change since the last run don't need to be read
+// again. Index files are named after the path of the jar and hold its size and modification time to detect changes.
+// They are memory-mapped and hold a RecordTable, so opening an index does not need to read the class names. Headers
+// are only decoded when they are looked up. Index files are kept in a subdirectory of the cache directory, apart from
+// converted classes. Index files that were not used for some time are removed when a new index is written.
+// The jars of a class path are also indexed together, so looking up a class is a single probe. Such an index is built
+// from the index of each jar, so only jars that changed are read again. Using it counts as using the index of each jar.
+public class ClassPathIndex {
+
+    private static final int FORMAT = 2;
+    private static final int HEADER_SIZE = 20;
+    private static final Duration MAX_UNUSED = Duration.ofDays(30);
+
+    private final Path path;
+    private final AtomicBoolean removedUnused;
+
+    public ClassPathIndex(Path path) throws IOException {
+        this.path = path.toAbsolutePath().normalize();
+        this.removedUnused = new AtomicBoolean(false);
+        Files.createDirectories(this.path);
+    }
+
+    public static ClassPathIndex inCache(Path cacheDirectory) throws IOException {
+        return new ClassPathIndex(cacheDirectory.resolve("classpath"));
+    }
+
+    // Classes are read from the entries starting with prefix, e.g. classes/ for jmods. The jar is only read, if it
+    // changed since it was indexed.
+    public Jar open(Path jar, String prefix) throws IOException {
+        Path jarPath = jar.toAbsolutePath().normalize();
+        Path file = this.jarFile(jarPath, prefix);
+        // Attributes are read before the jar, so a jar that changes while it is read is indexed again next time.
+        BasicFileAttributes attributes = Files.readAttributes(jarPath, BasicFileAttributes.class);
+        Jar index = load(file, attributes);
+        if (index == null) {
+            write(file, jarPath, prefix, attributes);
+            index = load(file, attributes);
+            if (index == null) {
+                throw new IOException("Failed to index " + jarPath);
+            }
+            this.removeUnused();
+        } else {
+            touch(file);
+        }
+        return index;
+    }
+
+    // Indexes multiple jars together. Like on a class path, classes from earlier jars win. prefixes holds the prefix
+    // for each jar, see open(Path, String)
+    public Jars open(List<Path> jars, List<String> prefixes) throws IOException {
+        if (jars.size() != prefixes.size()) {
+            throw new IllegalArgumentException("Expected a prefix for each jar");
+        }
+        List<Path> jarPaths = jars.stream().map(p -> p.toAbsolutePath().normalize()).toList();
+        Fingerprint fp = new Fingerprint().add(FORMAT).add(jarPaths.size());
+        for (int i = 0; i < jarPaths.size(); i++) {
+            fp.add(jarPaths.get(i).toString()).add(prefixes.get(i));
+        }
+        Path file = this.path.resolve(fp + ".cpx");
+        List<BasicFileAttributes> attributes = new ArrayList<>(jarPaths.size());
+        for (Path jarPath : jarPaths) {
+            attributes.add(Files.readAttributes(jarPath, BasicFileAttributes.class));
+        }
+        Jars index = loadJars(file, attributes);
+        if (index == null) {
+            this.writeJars(file, jarPaths, prefixes, attributes);
+            index = loadJars(file, attributes);
+            if (index == null) {
+                throw new IOException("Failed to index class path");
+            }
+            this.removeUnused();
+        } else {
+            touch(file);
+            // The index of each jar is needed again, once a jar changes.
+            for (int i = 0; i < jarPaths.size(); i++) {
+                touch(this.jarFile(jarPaths.get(i), prefixes.get(i)));
+            }
+        }
+        return index;
+    }
+
+    private Path jarFile(Path jarPath, String prefix) {
+        return this.path.resolve(new Fingerprint().add(FORMAT).add(jarPath.toString()).add(prefix) + ".idx");
+    }
+
+    // Only looks at the index files once, new indexes are rare compared to lookups. Files that can't be removed, e.g.
+    // because they are still mapped by another process, are kept.
+    private void removeUnused() {
+        if (this.removedUnused.getAndSet(true)) return;
+        long minLastUsed = Instant.now().minus(MAX_UNUSED).toEpochMilli();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.path, "*.{idx,cpx}")) {
+            for (Path file : files) {
+                try {
+                    if (Files.getLastModifiedTime(file).toMillis() < minLastUsed) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (IOException e) {
+                    //
+                }
+            }
+        } catch (IOException e) {
+            //
+        }
+    }
+
+    @Nullable
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            //
+        }
+    }
+
+    @Nullable
+    private static Jar load(Path file, BasicFileAttributes attributes) throws IOException {
+        ByteBuffer data = map(file);
+        if (data == null || data.limit() < HEADER_SIZE || data.getInt(0) != FORMAT || data.getLong(4) != attributes.size() || data.getLong(12) != attributes.lastModifiedTime().toMillis()) {
+            return null;
+        }
+        try {
+            return new Jar(file, new RecordTable(data, HEADER_SIZE));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Holds the size and modification time of the jar followed by the class headers by file name.
+    private static void write(Path file, Path jar, String prefix, BasicFileAttributes attributes) throws IOException {
+        RecordTable.Writer table = new RecordTable.Writer();
+        Set<String> names = new HashSet<>();
+        try (ArchiveReader archive = ArchiveReader.open(jar)) {
+            for (ArchiveReader.Entry entry : archive.entries()) {
+                if (entry.name().startsWith(prefix) && entry.name().endsWith(".class")) {
+                    // Classes are looked up by file name, which does not need to match the class name.
+                    String name = entry.name().substring(prefix.length(), entry.name().length() - 6);
+                    if (!names.add(name)) continue;
+                    writeHeader(table.add(name), ClassHeader.read(new ClassReader(archive.read(entry))));
+                }
+            }
+        }
+        writeFile(file, out -> {
+            out.writeInt(FORMAT);
+            out.writeLong(attributes.size());
+            out.writeLong(attributes.lastModifiedTime().toMillis());
+            table.writeTo(out, HEADER_SIZE);
+        });
+    }
+
+    @Nullable
+    private static Jars loadJars(Path file, List<BasicFileAttributes> attributes) throws IOException {
+        ByteBuffer data = map(file);
+        int headerSize = 8 + 16 * attributes.size();
+        if (data == null || data.limit() < headerSize || data.getInt(0) != FORMAT || data.getInt(4) != attributes.size()) {
+            return null;
+        }
+        for (int i = 0; i < attributes.size(); i++) {
+            if (data.getLong(8 + 16 * i) != attributes.get(i).size() || data.getLong(16 + 16 * i) != attributes.get(i).lastModifiedTime().toMillis()) {
+                return null;
+            }
+        }
+        try {
+            return new Jars(file, new RecordTable(data, headerSize));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Holds the number of jars and size and modification time of each jar followed by the class headers by file name.
+    // Each header is preceded by the number of the jar, it was found in.
+    private void writeJars(Path file, List<Path> jarPaths, List<String> prefixes, List<BasicFileAttributes> attributes) throws IOException {
+        RecordTable.Writer table = new RecordTable.Writer();
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < jarPaths.size(); i++) {
+            Jar jar = this.open(jarPaths.get(i), prefixes.get(i));
+            List<String> jarNames = new ArrayList<>();
+            List<Integer> positions = new ArrayList<>();
+            jar.forEach((name, position) -> {
+                if (names.add(name)) {
+                    jarNames.add(name);
+                    positions.add(position);
+                }
+            });
+            for (int j = 0; j < jarNames.size(); j++) {
+                DataOutputStream out = table.add(jarNames.get(j));
+                out.writeInt(i);
+                writeHeader(out, jar.get(positions.get(j)));
+            }
+        }
+        writeFile(file, out -> {
+            out.writeInt(FORMAT);
+            out.writeInt(attributes.size());
+            for (BasicFileAttributes jarAttributes : attributes) {
+                out.writeLong(jarAttributes.size());
+                out.writeLong(jarAttributes.lastModifiedTime().toMillis());
+            }
+            table.writeTo(out, 8 + 16 * attributes.size());
+        });
+    }
+
+    private static void writeHeader(DataOutputStream out, ClassHeader header) throws IOException {
+        RecordTable.writeString(out, header.name());
+        out.writeInt(header.access());
+        RecordTable.writeString(out, header.superName() == null ? "" : header.superName());
+        out.writeInt(header.interfaces().size());
+        for (String itf : header.interfaces()) {
+            RecordTable.writeString(out, itf);
+        }
+    }
+
+    private static ClassHeader readHeader(ByteBuffer data) {
+        String name = RecordTable.readString(data);
+        int access = data.getInt();
+        String superName = RecordTable.readString(data);
+        String[] interfaces = new String[data.getInt()];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = RecordTable.readString(data);
+        }
+        return new ClassHeader(name, access, superName.isEmpty() ? null : superName, List.of(interfaces));
+    }
+
+    // Write to a temporary file first, so concurrent readers never see a partially written index.
+    private static void writeFile(Path file, IndexWriter writer) throws IOException {
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                writer.write(out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @FunctionalInterface
+    private interface IndexWriter {
+
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    // The indexed classes of a single jar. Names are file names without .class relative to the prefix.
+    public static class Jar implements ClassAccessor {
+
+        private final Path file;
+        private final RecordTable classes;
+
+        private Jar(Path file, RecordTable classes) {
+            this.file = file;
+            this.classes = classes;
+        }
+
+        @Nullable
+        @Override
+        public ClassHeader get(String cls) throws IOException {
+            try {
+                ByteBuffer data = this.classes.get(cls);
+                return data == null ? null : readHeader(data);
+            } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Corrupt class path index: " + this.file, e);
+            }
+        }
+
+        // The class header at a position passed to forEach.
+        public ClassHeader get(int position) throws IOException {
+            try {
+                return readHeader(this.classes.data().duplicate().position(position));
+            } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Corrupt class path index: " + this.file, e);
+            }
+        }
+
+        // Calls action with the file name and the position of the header of each indexed class.
+        public void forEach(ObjIntConsumer<String> action) throws IOException {
+            try {
+                this.classes.forEach(action);
+            } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Corrupt class path index: " + this.file, e);
+            }
+        }
+    }
+
+    // The indexed classes of multiple jars. Names are file names without .class relative to the prefix.
+    public static class Jars implements ClassAccessor {
+
+        private final Path file;
+        private final RecordTable classes;
+
+        private Jars(Path file, RecordTable classes) {
+            this.file = file;
+            this.classes = classes;
+        }
+
+        @Nullable
+        @Override
+        public ClassHeader get(String cls) throws IOException {
+            int position = this.find(cls);
+            return position < 0 ? null : this.get(position);
+        }
+
+        // The position of a class, or -1 if the class is in none of the jars.
+        public int find(String cls) throws IOException {
+            try {
+                return this.classes.find(cls);
+            } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Corrupt class path index: " + this.file, e);
+            }
+        }
+
+        // The number of the jar, the class at a position was found in.
+        public int jar(int position) throws IOException {
+            try {
+                return this.classes.data().getInt(position);
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException("Corrupt class path index: " + this.file, e);
+            }
+        }
+
+        // The class header at a position returned by find.
+        public ClassHeader get(int position) throws IOException {
+            try {
+                return readHeader(this.classes.data().duplicate().position(position + 4));
+            } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Corrupt class path index: " + this.file, e);
+            }
+        }
+    }
+}
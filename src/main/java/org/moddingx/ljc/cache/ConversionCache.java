@@ -0,0 +1,186 @@
+package org.moddingx.ljc.cache;
+
+import jakarta.annotation.Nullable;
+import org.moddingx.ljc.LegacyConverter;
+import org.moddingx.ljc.util.Fingerprint;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Stores converted classes on disk. Entries are addressed by a hash of the class data and of everything else the
+// conversion result depends on, so an entry is never invalidated, only evicted. Once the cache grows beyond its
+// maximum size, the least recently used entries are removed. Entries are kept in their own subdirectory of the cache
+// directory, so the class path index and symbol databases are neither counted nor evicted with them.
+public class ConversionCache {
+
+    private static final int FORMAT = 2;
+
+    @Nullable private static String converterVersion = null;
+
+    private final Path path;
+    private final long maxSize;
+    private final String version;
+
+    public ConversionCache(Path path, long maxSize) throws IOException {
+        this.path = path.toAbsolutePath().normalize();
+        this.maxSize = maxSize;
+        this.version = new Fingerprint().add(FORMAT).add(converterVersion()).toString();
+        Files.createDirectories(this.path);
+    }
+
+    public static ConversionCache inCache(Path cacheDirectory, long maxSize) throws IOException {
+        return new ConversionCache(cacheDirectory.resolve("classes"), maxSize);
+    }
+
+    // The environment identifies everything apart from the class itself that affects the conversion result.
+    public String key(String environment, byte[] classData) {
+        return new Fingerprint().add(this.version).add(environment).add(classData).toString();
+    }
+
+    @Nullable
+    public Entry get(String key) throws IOException {
+        Path file = this.file(key);
+        if (!Files.isRegularFile(file)) return null;
+        Entry entry;
+        try {
+            // Entries hold a single class, so they are read at once. Counts and lengths are checked against the size
+            // of the file, so a corrupt or foreign file is treated as a miss.
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (data.remaining() < 4 || data.getInt() != FORMAT) return null;
+            List<String> errors = readStrings(data);
+            if (errors == null) return null;
+            List<String> conversionErrors = readStrings(data);
+            if (conversionErrors == null) return null;
+            byte[] classData = readBytes(data);
+            if (classData == null) return null;
+            entry = new Entry(classData, errors, conversionErrors);
+        } catch (NoSuchFileException e) {
+            // Concurrently evicted entry
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+        } catch (IOException e) {
+            //
+        }
+        return entry;
+    }
+
+    public void put(String key, Entry entry) throws IOException {
+        Path file = this.file(key);
+        Files.createDirectories(file.getParent());
+        // Write to a temporary file first, so concurrent readers never see a partially written entry.
+        Path tmp = Files.createTempFile(file.getParent(), key, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FORMAT);
+                writeStrings(out, entry.errors());
+                writeStrings(out, entry.conversionErrors());
+                out.writeInt(entry.data().length);
+                out.write(entry.data());
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Removes the least recently used entries until the cache is no larger than its maximum size.
+    public void evict() throws IOException {
+        record CacheFile(Path path, long size, long lastUsed) {}
+        List<CacheFile> files = new ArrayList<>();
+        long totalSize = 0;
+        try (Stream<Path> paths = Files.walk(this.path)) {
+            for (Path file : paths.filter(Files::isRegularFile).toList()) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    files.add(new CacheFile(file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                    totalSize += attributes.size();
+                } catch (NoSuchFileException e) {
+                    //
+                }
+            }
+        }
+        if (totalSize <= this.maxSize) return;
+        files.sort(Comparator.comparingLong(CacheFile::lastUsed));
+        for (CacheFile file : files) {
+            if (totalSize <= this.maxSize) break;
+            Files.deleteIfExists(file.path());
+            totalSize -= file.size();
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    // null if the data is truncated.
+    @Nullable
+    private static List<String> readStrings(ByteBuffer data) {
+        if (data.remaining() < 4) return null;
+        int count = data.getInt();
+        if (count < 0 || count > data.remaining() / 4) return null;
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = readBytes(data);
+            if (bytes == null) return null;
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return List.of(strings);
+    }
+
+    // null if the data is truncated.
+    @Nullable
+    private static byte[] readBytes(ByteBuffer data) {
+        if (data.remaining() < 4) return null;
+        int len = data.getInt();
+        if (len < 0 || len > data.remaining()) return null;
+        byte[] bytes = new byte[len];
+        data.get(bytes);
+        return bytes;
+    }
+
+    private Path file(String key) {
+        return this.path.resolve(key.substring(0, 2)).resolve(key.substring(2));
+    }
+
+    // The conversion result may change with every version of the converter. Besides the version number,
+    // this includes the location of the converter classes, so development builds don't share entries.
+    private static synchronized String converterVersion() throws IOException {
+        if (converterVersion == null) {
+            Fingerprint fp = new Fingerprint();
+            String version = LegacyConverter.class.getPackage().getImplementationVersion();
+            fp.add(version == null ? "" : version);
+            CodeSource source = LegacyConverter.class.getProtectionDomain().getCodeSource();
+            if (source != null && source.getLocation() != null) {
+                try {
+                    fp.addFile(Path.of(source.getLocation().toURI()));
+                } catch (URISyntaxException | IllegalArgumentException | FileSystemNotFoundException e) {
+                    fp.add(source.getLocation().toString());
+                }
+            }
+            converterVersion = fp.toString();
+        }
+        return converterVersion;
+    }
+
+    // A converted class together with the errors reported by the symbol table check and other errors found during
+    // conversion, see ConversionSession.Result
+    public record Entry(byte[] data, List<String> errors, List<String> conversionErrors) {}
+}
@@ -12,6 +12,7 @@ import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.tree.ClassNode;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 public class ClassConverter {
     
@@ -30,11 +31,41 @@ public class ClassConverter {
         this.conversions = Map.copyOf(map);
     }
     
+    // Checks the class file version from the first 8 bytes of a class file, so classes that don't need conversion can
+    // be skipped without parsing them. Returns true for anything that doesn't look like a class file header.
+    public boolean needsConversion(byte[] header) {
+        if (header.length < 8 || header[0] != (byte) 0xCA || header[1] != (byte) 0xFE || header[2] != (byte) 0xBA || header[3] != (byte) 0xBE) {
+            return true;
+        }
+        int classVer = ((header[4] & 0xFF) << 24) | ((header[5] & 0xFF) << 16) | ((header[6] & 0xFF) << 8) | (header[7] & 0xFF);
+        return classVer > this.api.jvm;
+    }
+    
     @Nullable
     public ClassNode convert(ClassReader cls, @Nullable SymbolTable table) {
-        int classVer = cls.readInt(cls.getItem(1) - 7);
+        ClassNode original = new ClassNode();
+        cls.accept(original, 0);
+        return this.convert(original, ClassFeature.scan(cls), table);
+    }
+    
+    @Nullable
+    public ClassNode convert(ClassNode cls, @Nullable SymbolTable table) {
+        return this.convert(cls, EnumSet.allOf(ClassFeature.class), table);
+    }
+    
+    @Nullable
+    public ClassNode convert(ClassNode cls, Set<ClassFeature> features, @Nullable SymbolTable table) {
+        return this.convert(cls, features, table, Log::error);
+    }
+    
+    // Only runs the converters needed for the given features, see ClassFeature#scan
+    // The original class is not modified, so it can be compared to the converted class afterwards.
+    // Problems that don't prevent the conversion are reported to errors.
+    @Nullable
+    public ClassNode convert(ClassNode cls, Set<ClassFeature> features, @Nullable SymbolTable table, Consumer<String> errors) {
+        int classVer = cls.version;
         if (classVer > this.api.jvm) {
-            Log.info("Converting " + cls.getClassName());
+            Log.info("Converting " + cls.name);
             if (!this.conversions.containsKey(classVer)) {
                 throw new IllegalStateException("Don't know how to downgrade a class of version 0x" + String.format("%08X", classVer));
             } else {
@@ -42,12 +73,12 @@ public class ClassConverter {
                 ClassVisitor visitor = new ClassVersionConverter(this.api, node);
                 visitor = new AttributeRemover(this.api.asm, visitor);
                 if (table != null) {
-                    visitor = new MethodToOverriddenConverter(this.api.asm, table, visitor);
+                    visitor = new MethodToOverriddenConverter(this.api.asm, table, errors, visitor);
                 }
                 for (LanguageLevel level : this.conversions.get(classVer)) {
-                    visitor = level.create(visitor);
+                    visitor = level.create(visitor, features);
                 }
-                cls.accept(visitor, 0);
+                cls.accept(visitor);
                 return node;
             }
         } else {
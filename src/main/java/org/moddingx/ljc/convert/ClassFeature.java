@@ -0,0 +1,77 @@
+package org.moddingx.ljc.convert;
+
+import org.objectweb.asm.ClassReader;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+// Language features a class may use, that need a specific converter. A converter, that handles one of these features,
+// only needs to run for classes that use it.
+public enum ClassFeature {
+    MODULE,
+    STRING_CONCAT,
+    CONSTANT_DYNAMIC,
+    NEST,
+    RECORD,
+    SEALED,
+    SWITCH_PATTERNS,
+    MATCH_EXCEPTION;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_DYNAMIC_TAG = 17;
+
+    // Features that are detected by the attributes of a class. Attribute names are always in the constant pool.
+    private static final Map<String, ClassFeature> ATTRIBUTES = Map.of(
+            "Module", MODULE,
+            "NestHost", NEST,
+            "NestMembers", NEST,
+            "Record", RECORD,
+            "PermittedSubclasses", SEALED
+    );
+
+    // Features that are detected by a reference to a class, e.g. as owner of a bootstrap method.
+    private static final Map<String, ClassFeature> CLASSES = Map.of(
+            "java/lang/invoke/StringConcatFactory", STRING_CONCAT,
+            "java/lang/runtime/SwitchBootstraps", SWITCH_PATTERNS,
+            "java/lang/MatchException", MATCH_EXCEPTION
+    );
+
+    // Finds the features a class uses from its constant pool, without parsing the rest of the class. The result may
+    // contain features that are not actually used, but never misses a feature.
+    public static Set<ClassFeature> scan(ClassReader cls) {
+        Set<ClassFeature> features = EnumSet.noneOf(ClassFeature.class);
+        char[] buffer = new char[cls.getMaxStringLength()];
+        for (int i = 1; i < cls.getItemCount(); i++) {
+            int offset = cls.getItem(i);
+            // Second slot of long and double entries
+            if (offset == 0) continue;
+            switch (cls.readByte(offset - 1)) {
+                case CONSTANT_UTF8 -> {
+                    for (Map.Entry<String, ClassFeature> attribute : ATTRIBUTES.entrySet()) {
+                        if (!features.contains(attribute.getValue()) && isUtf8(cls, offset, attribute.getKey())) {
+                            features.add(attribute.getValue());
+                        }
+                    }
+                }
+                case CONSTANT_CLASS -> {
+                    ClassFeature feature = CLASSES.get(cls.readUTF8(offset, buffer));
+                    if (feature != null) features.add(feature);
+                }
+                case CONSTANT_DYNAMIC_TAG -> features.add(CONSTANT_DYNAMIC);
+                default -> {}
+            }
+        }
+        return features;
+    }
+
+    // Compares an utf8 constant to an ascii string without decoding it.
+    private static boolean isUtf8(ClassReader cls, int offset, String value) {
+        if (cls.readUnsignedShort(offset) != value.length()) return false;
+        for (int i = 0; i < value.length(); i++) {
+            if (cls.readByte(offset + 2 + i) != value.charAt(i)) return false;
+        }
+        return true;
+    }
+}
@@ -1,30 +1,50 @@
 package org.moddingx.ljc.convert;
 
+import jakarta.annotation.Nullable;
 import org.moddingx.ljc.Log;
+import org.moddingx.ljc.util.Bytecode;
 import org.moddingx.ljc.util.ClassAccessor;
+import org.moddingx.ljc.util.ClassHeader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
+// May be used by multiple threads at the same time. Hierarchies are computed without a lock, so two threads may
+// compute the same hierarchy. Both get the same result, the class accessor is expected to cache parsed classes.
 public class ClassHierarchy {
     
     private final ClassAccessor accessor;
     private final Set<String> interfaces;
-    private final Map<String, List<String>> hierarchies;
+    private final Map<String, Hierarchy> hierarchies;
 
     public ClassHierarchy(ClassAccessor accessor) {
         this.accessor = accessor;
-        this.interfaces = new HashSet<>();
-        this.hierarchies = new HashMap<>();
-        this.hierarchies.put("java/lang/Object", List.of());
+        this.interfaces = ConcurrentHashMap.newKeySet();
+        this.hierarchies = new ConcurrentHashMap<>();
+        this.hierarchies.put("java/lang/Object", new Hierarchy(List.of(), null));
     }
     
     public ClassWriter createClassWriter() {
-        return new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS) {
+        return this.createClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+    }
+    
+    public ClassWriter createClassWriter(int flags) {
+        return this.createClassWriter(flags, Log::error);
+    }
+    
+    // Classes missing from the hierarchy are reported to errors, each time they are needed to compute frames.
+    public ClassWriter createClassWriter(int flags, Consumer<String> errors) {
+        return new ClassWriter(flags) {
 
             @Override
             protected ClassLoader getClassLoader() {
@@ -34,21 +54,7 @@ public class ClassHierarchy {
             @Override
             protected String getCommonSuperClass(String type1, String type2) {
                 try {
-                    if ("java/lang/Object".equals(type1) || "java/lang/Object".equals(type2)) {
-                        return "java/lang/Object";
-                    }
-                    ClassHierarchy.this.loadHierarchy(type1);
-                    ClassHierarchy.this.loadHierarchy(type2);
-                    if (ClassHierarchy.this.interfaces.contains(type1) || ClassHierarchy.this.interfaces.contains(type2)) {
-                        return "java/lang/Object";
-                    }
-                    List<String> typesToCheck = ClassHierarchy.this.hierarchies.get(type2);
-                    for (String type : ClassHierarchy.this.hierarchies.get(type1)) {
-                        if (typesToCheck.contains(type)) {
-                            return type;
-                        }
-                    }
-                    return "java/lang/Object";
+                    return ClassHierarchy.this.getCommonSuperClass(type1, type2, errors);
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
@@ -56,27 +62,87 @@ public class ClassHierarchy {
         };
     }
     
-    private void loadHierarchy(String cls) throws IOException {
-        this.loadHierarchy(cls, cls);
+    // Writes a converted class. Frames are only computed for methods, that were added or whose code was changed by the
+    // conversion. All other methods keep the frames of the original class.
+    public byte[] writeClass(ClassNode original, ClassNode converted) {
+        return this.writeClass(original, converted, UnaryOperator.identity(), Log::error);
+    }
+    
+    // visitor wraps the class writer, so the class can be inspected while it is written. It must pass everything on
+    // unchanged. Classes missing from the hierarchy are reported to errors.
+    public byte[] writeClass(ClassNode original, ClassNode converted, UnaryOperator<ClassVisitor> visitor, Consumer<String> errors) {
+        Map<String, MethodNode> originalMethods = new HashMap<>();
+        for (MethodNode method : original.methods) {
+            originalMethods.put(method.name + method.desc, method);
+        }
+        boolean[] changed = new boolean[converted.methods.size()];
+        for (int i = 0; i < converted.methods.size(); i++) {
+            MethodNode method = converted.methods.get(i);
+            MethodNode originalMethod = originalMethods.get(method.name + method.desc);
+            changed[i] = originalMethod == null || !Bytecode.sameCode(originalMethod, method);
+        }
+        ClassWriter cw = this.createClassWriter(0, errors);
+        converted.accept(visitor.apply(new ClassVisitor(Opcodes.ASM9, cw) {
+            
+            private int method = 0;
+            
+            // Methods are visited in the order of ClassNode#methods
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                cw.setFlags(changed[this.method++] ? ClassWriter.COMPUTE_FRAMES : 0);
+                return super.visitMethod(access, name, descriptor, signature, exceptions);
+            }
+        }));
+        return cw.toByteArray();
     }
     
-    private void loadHierarchy(String cls, String requestedCls) throws IOException {
-        if (!this.hierarchies.containsKey(cls)) {
-            ClassNode node = this.accessor.get(cls);
-            if (node == null) {
-                Log.error("Failed to compute class hierarchy for " + requestedCls + ": Class not found: " + cls + " (assuming java/lang/Object)");
-                this.hierarchies.put(cls, List.of("java/lang/Object"));
+    private String getCommonSuperClass(String type1, String type2, Consumer<String> errors) throws IOException {
+        if ("java/lang/Object".equals(type1) || "java/lang/Object".equals(type2)) {
+            return "java/lang/Object";
+        }
+        List<String> hierarchy1 = this.loadHierarchy(type1, errors);
+        List<String> hierarchy2 = this.loadHierarchy(type2, errors);
+        if (this.interfaces.contains(type1) || this.interfaces.contains(type2)) {
+            return "java/lang/Object";
+        }
+        for (String type : hierarchy1) {
+            if (hierarchy2.contains(type)) {
+                return type;
+            }
+        }
+        return "java/lang/Object";
+    }
+    
+    private List<String> loadHierarchy(String cls, Consumer<String> errors) throws IOException {
+        Hierarchy hierarchy = this.loadHierarchy(cls);
+        if (hierarchy.missing() != null) {
+            errors.accept("Failed to compute class hierarchy for " + cls + ": Class not found: " + hierarchy.missing() + " (assuming java/lang/Object)");
+        }
+        return hierarchy.supertypes();
+    }
+    
+    // Interfaces are recorded before the hierarchy, so a thread that finds a hierarchy also finds the interface.
+    private Hierarchy loadHierarchy(String cls) throws IOException {
+        Hierarchy hierarchy = this.hierarchies.get(cls);
+        if (hierarchy != null) return hierarchy;
+        ClassHeader header = this.accessor.get(cls);
+        if (header == null) {
+            hierarchy = new Hierarchy(List.of("java/lang/Object"), cls);
+        } else {
+            if ((header.access() & Opcodes.ACC_INTERFACE) != 0) {
+                this.interfaces.add(cls);
+            }
+            if (header.superName() == null) {
+                hierarchy = new Hierarchy(List.of("java/lang/Object"), null);
             } else {
-                if ((node.access & Opcodes.ACC_INTERFACE) != 0) {
-                    this.interfaces.add(cls);
-                }
-                if (node.superName == null) {
-                    this.hierarchies.put(cls, List.of("java/lang/Object"));
-                } else {
-                    this.loadHierarchy(node.superName, requestedCls);
-                    this.hierarchies.put(cls, Stream.concat(Stream.of(node.superName), this.hierarchies.get(node.superName).stream()).toList());
-                }
+                Hierarchy superHierarchy = this.loadHierarchy(header.superName());
+                hierarchy = new Hierarchy(Stream.concat(Stream.of(header.superName()), superHierarchy.supertypes().stream()).toList(), superHierarchy.missing());
             }
         }
+        Hierarchy existing = this.hierarchies.putIfAbsent(cls, hierarchy);
+        return existing == null ? hierarchy : existing;
     }
+    
+    // missing is the first class of the hierarchy, that was not found, if any.
+    private record Hierarchy(List<String> supertypes, @Nullable String missing) {}
 }
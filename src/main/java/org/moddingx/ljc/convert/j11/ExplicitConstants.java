@@ -1,36 +1,34 @@
 package org.moddingx.ljc.convert.j11;
 
+import jakarta.annotation.Nullable;
 import org.moddingx.ljc.convert.j11.constanddynamic.BootstrappedDynamicEntry;
 import org.moddingx.ljc.convert.j11.constanddynamic.DynamicEntry;
 import org.moddingx.ljc.convert.j11.constanddynamic.IndyBouncer;
 import org.moddingx.ljc.convert.j11.constanddynamic.NullDynamicEntry;
-import org.moddingx.ljc.util.ChangeAwareClassVisitor;
 import org.objectweb.asm.*;
 import org.objectweb.asm.tree.InsnNode;
 import org.objectweb.asm.tree.MethodNode;
 
 import java.util.*;
 
-public class ExplicitConstants extends ChangeAwareClassVisitor {
+// Replaces dynamic constants with synthetic methods, that compute them on first use. Bootstrap arguments of a dynamic
+// constant may be dynamic constants themselves. These are found while the synthetic members are generated and added
+// to a work list, so all of them are converted in a single pass over the class.
+public class ExplicitConstants extends ClassVisitor {
 
     private String clsName;
-    private MethodNode clinit;
+    @Nullable private MethodNode clinit;
     private final Map<ConstantDynamic, DynamicEntry> dynamics;
+    // Entries that have not yet generated their synthetic members
+    private final Queue<DynamicEntry> pending;
     private final List<IndyBouncer> indys;
-    private final ClassVisitor parent;
     
     public ExplicitConstants(int api, ClassVisitor parent) {
-        super(api, parent);
-        
-        this.clinit = new MethodNode();
-        this.clinit.access = Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC;
-        this.clinit.name = "<clinit>";
-        this.clinit.desc = "()V";
-        this.clinit.instructions.add(new InsnNode(Opcodes.RETURN));
-        
+        super(api, parent == null ? new ClassVisitor(api) {} : parent);
+        this.clinit = null;
         this.dynamics = new HashMap<>();
+        this.pending = new ArrayDeque<>();
         this.indys = new ArrayList<>();
-        this.parent = parent == null ? new ClassVisitor(api) {} : parent;
     }
 
     @Override
@@ -42,12 +40,7 @@ public class ExplicitConstants extends ChangeAwareClassVisitor {
     @Override
     public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
         if ("<clinit>".equals(name) && "()V".equals(descriptor)) {
-            this.clinit = new MethodNode();
-            this.clinit.access = access;
-            this.clinit.name = name;
-            this.clinit.desc = descriptor;
-            this.clinit.signature = signature;
-            this.clinit.exceptions = Arrays.asList(exceptions);
+            this.clinit = new MethodNode(access, name, descriptor, signature, exceptions);
             return new ReplaceDynamic(this.api, this.clinit);
         } else {
             return new ReplaceDynamic(this.api, super.visitMethod(access, name, descriptor, signature, exceptions));
@@ -56,23 +49,26 @@ public class ExplicitConstants extends ChangeAwareClassVisitor {
 
     @Override
     public void visitEnd() {
-        for (IndyBouncer bouncer : this.indys) {
-            bouncer.generateSynthetic(this.parent, this::addDynamic);
+        // Synthetic members are generated through this visitor, so nested dynamic constants are replaced as well.
+        for (int i = 0; i < this.indys.size(); i++) {
+            this.indys.get(i).generateSynthetic(this, this::addDynamic);
         }
-        
-        for (DynamicEntry entry : this.dynamics.values()) {
-            entry.generateSynthetic(this.parent);
+        while (!this.pending.isEmpty()) {
+            this.pending.remove().generateSynthetic(this);
         }
         
-        MethodVisitor mv = super.visitMethod(this.clinit.access, this.clinit.name, this.clinit.desc, this.clinit.signature, this.clinit.exceptions == null ? null : this.clinit.exceptions.toArray(String[]::new));
-        for (DynamicEntry entry : this.dynamics.values()) {
-            entry.generateClassInit(mv);
-        }
-        this.clinit.accept(mv);
-        // visitEnd is called by MethodNode#accept
-        
-        if (!this.dynamics.isEmpty() || !this.indys.isEmpty()) {
-            this.changed();
+        if (this.clinit != null || !this.dynamics.isEmpty()) {
+            MethodNode clinit = this.clinit;
+            if (clinit == null) {
+                clinit = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+                clinit.instructions.add(new InsnNode(Opcodes.RETURN));
+            }
+            MethodVisitor mv = super.visitMethod(clinit.access, clinit.name, clinit.desc, clinit.signature, clinit.exceptions == null ? null : clinit.exceptions.toArray(String[]::new));
+            for (DynamicEntry entry : this.dynamics.values()) {
+                entry.generateClassInit(mv);
+            }
+            clinit.accept(mv);
+            // visitEnd is called by MethodNode#accept
         }
         
         super.visitEnd();
@@ -94,6 +90,7 @@ public class ExplicitConstants extends ChangeAwareClassVisitor {
             } else {
                 this.dynamics.put(dyn, new BootstrappedDynamicEntry(this.clsName, unique, dyn));
             }
+            this.pending.add(this.dynamics.get(dyn));
         }
         return this.dynamics.get(dyn);
     }
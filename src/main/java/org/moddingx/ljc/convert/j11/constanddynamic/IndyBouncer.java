@@ -8,7 +8,7 @@ import java.util.function.Function;
 
 public record IndyBouncer(String clsName, String name, Handle oldBootstrap, List<Object> args) {
     
-    public static final String BOUNCER_DESC = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType)Ljava/lang/invoke/CallSite;";
+    public static final String BOUNCER_DESC = "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;";
     
     public void generateSynthetic(ClassVisitor visitor, Function<ConstantDynamic, DynamicEntry> dynamicFactory) {
         MethodVisitor mv = visitor.visitMethod(
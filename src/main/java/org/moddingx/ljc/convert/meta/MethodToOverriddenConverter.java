@@ -6,15 +6,20 @@ import org.objectweb.asm.Handle;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
+import java.util.function.Consumer;
+
+// Ambiguous overridden methods are reported to errors.
 public class MethodToOverriddenConverter extends ClassVisitor {
 
     private final int api;
     private final SymbolTable table;
+    private final Consumer<String> errors;
     
-    public MethodToOverriddenConverter(int api, SymbolTable table, ClassVisitor visitor) {
+    public MethodToOverriddenConverter(int api, SymbolTable table, Consumer<String> errors, ClassVisitor visitor) {
         super(api, visitor);
         this.api = api;
         this.table = table;
+        this.errors = errors;
     }
 
     @Override
@@ -24,7 +29,7 @@ public class MethodToOverriddenConverter extends ClassVisitor {
             @Override
             public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
                 if (opcode == Opcodes.INVOKEVIRTUAL || opcode == Opcodes.INVOKEINTERFACE) {
-                    SymbolTable.OwnerReplace replace = MethodToOverriddenConverter.this.table.replaceWithOverriddenMethod(opcode, owner, name, descriptor, isInterface);
+                    SymbolTable.OwnerReplace replace = MethodToOverriddenConverter.this.table.replaceWithOverriddenMethod(opcode, owner, name, descriptor, isInterface, MethodToOverriddenConverter.this.errors);
                     super.visitMethodInsn(replace.opcode(), replace.owner(), name, descriptor, replace.isInterface());
                 } else {
                     super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
@@ -37,7 +42,7 @@ public class MethodToOverriddenConverter extends ClassVisitor {
                     SymbolTable.OwnerReplace replace = MethodToOverriddenConverter.this.table.replaceWithOverriddenMethod(
                             bootstrapMethodHandle.getTag() == Opcodes.H_INVOKEINTERFACE ? Opcodes.INVOKEINTERFACE : Opcodes.INVOKEVIRTUAL,
                             bootstrapMethodHandle.getOwner(), bootstrapMethodHandle.getName(),
-                            bootstrapMethodHandle.getDesc(), bootstrapMethodHandle.isInterface()
+                            bootstrapMethodHandle.getDesc(), bootstrapMethodHandle.isInterface(), MethodToOverriddenConverter.this.errors
                     );
                     int tag = replace.opcode() == Opcodes.INVOKEINTERFACE ? Opcodes.H_INVOKEINTERFACE : Opcodes.H_INVOKEVIRTUAL;
                     Handle newHandle = new Handle(tag, replace.owner(), bootstrapMethodHandle.getName(), bootstrapMethodHandle.getDesc(), replace.isInterface());
@@ -0,0 +1,276 @@
+package org.moddingx.ljc.daemon;
+
+import org.moddingx.ljc.ConversionOptions;
+import org.moddingx.ljc.LanguageLevel;
+import org.moddingx.ljc.LegacyConverter;
+import org.moddingx.ljc.Log;
+import org.moddingx.ljc.cache.ClassPathIndex;
+import org.moddingx.ljc.symbol.SymbolDatabase;
+import org.moddingx.ljc.symbol.SymbolTable;
+import org.moddingx.ljc.util.ClassPath;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+
+// Keeps symbol tables and class paths loaded between conversions. Requests are received on a unix domain socket and
+// handled one at a time, as logs are global. A symbol table or class path is reloaded, when its files change.
+public class ConversionDaemon implements Closeable {
+
+    private static final int MAX_SYMBOL_TABLES = 4;
+    private static final int MAX_CLASS_PATHS = 16;
+
+    private final Path socket;
+    private final ServerSocketChannel server;
+    // Least recently used first
+    private final LinkedHashMap<TableKey, Loaded<SymbolTable>> tables;
+    private final LinkedHashMap<List<Path>, Loaded<ClassPath>> classPaths;
+    private final long startTime;
+    private boolean running;
+    private long requests;
+    private long tableHits;
+    private long tableMisses;
+    private long classPathHits;
+    private long classPathMisses;
+
+    public ConversionDaemon(Path socket) throws IOException {
+        this.socket = socket.toAbsolutePath().normalize();
+        if (Files.exists(this.socket)) {
+            boolean alive;
+            try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(this.socket))) {
+                alive = channel.isConnected();
+            } catch (IOException e) {
+                alive = false;
+            }
+            if (alive) {
+                throw new IOException("A daemon is already running on " + this.socket);
+            }
+            // Stale socket file of a daemon that did not shut down properly.
+            Files.delete(this.socket);
+        }
+        this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            bind(this.server, this.socket);
+        } catch (IOException | RuntimeException e) {
+            this.server.close();
+            throw e;
+        }
+        this.tables = new LinkedHashMap<>(16, 0.75f, true);
+        this.classPaths = new LinkedHashMap<>(16, 0.75f, true);
+        this.startTime = System.currentTimeMillis();
+        this.running = true;
+    }
+
+    // The daemon reads and writes files on behalf of its clients, so only the owner may connect. The socket is bound
+    // in a new directory, only the owner can access, and moved to its location, once its permissions are restricted.
+    private static void bind(ServerSocketChannel server, Path socket) throws IOException {
+        Path dir;
+        try {
+            dir = Files.createTempDirectory(socket.getParent(), ".ljc", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } catch (UnsupportedOperationException e) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            return;
+        }
+        Path tmp = dir.resolve("socket");
+        try {
+            server.bind(UnixDomainSocketAddress.of(tmp));
+            Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+            Files.move(tmp, socket, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+            Files.delete(dir);
+        }
+    }
+
+    public void run() throws IOException {
+        Log.info("Listening on " + this.socket);
+        while (this.running) {
+            SocketChannel client;
+            try {
+                client = this.server.accept();
+            } catch (AsynchronousCloseException e) {
+                break;
+            }
+            try (client) {
+                this.handle(client);
+            } catch (IOException | RuntimeException e) {
+                Log.error("Failed to handle request: " + e);
+            }
+        }
+    }
+
+    private void handle(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+        long start = System.nanoTime();
+        int version;
+        try {
+            version = in.readInt();
+        } catch (EOFException e) {
+            // Closed without a request, e.g. by another daemon checking whether the socket is in use.
+            return;
+        }
+        int type = in.readInt();
+        this.requests += 1;
+        int exit;
+        Log.configureLogs(new MessageStream(out, DaemonProtocol.INFO), new MessageStream(out, DaemonProtocol.ERROR), null);
+        try {
+            if (version != DaemonProtocol.VERSION) {
+                Log.error("Unsupported protocol version: " + version + " (daemon uses " + DaemonProtocol.VERSION + ")");
+                exit = 1;
+            } else {
+                exit = switch (type) {
+                    case DaemonProtocol.CONVERT -> this.convert(DaemonProtocol.ConvertRequest.read(in));
+                    case DaemonProtocol.STATS -> this.stats();
+                    case DaemonProtocol.STOP -> {
+                        this.running = false;
+                        Log.info("Stopping daemon.");
+                        yield 0;
+                    }
+                    default -> {
+                        Log.error("Unknown request: " + type);
+                        yield 1;
+                    }
+                };
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.error("Request failed: " + e);
+            exit = 1;
+        } finally {
+            Log.configureLogs(System.out, System.err, null);
+        }
+        synchronized (out) {
+            out.writeInt(DaemonProtocol.EXIT);
+            out.writeInt(exit);
+            out.flush();
+        }
+        Log.info("Handled request in " + ((System.nanoTime() - start) / 1000000) + "ms (exit " + exit + ")");
+    }
+
+    private int convert(DaemonProtocol.ConvertRequest request) throws IOException {
+        SymbolTable table = this.symbolTable(request.api(), request.javaPath(), request.options());
+        ClassPath cp = this.classPath(request.classPath(), request.options());
+        try (LegacyConverter converter = new LegacyConverter(table, cp, request.options())) {
+            return converter.convertAll(request.jobs());
+        }
+    }
+
+    // The class cache size of the request that loads a symbol table or class path is used for as long as it is kept.
+    private SymbolTable symbolTable(LanguageLevel api, Path javaPath, ConversionOptions options) throws IOException {
+        TableKey key = new TableKey(api, javaPath);
+        String fingerprint = SymbolTable.fingerprint(javaPath);
+        Loaded<SymbolTable> loaded = this.tables.get(key);
+        if (loaded != null && loaded.fingerprint().equals(fingerprint)) {
+            this.tableHits += 1;
+            return loaded.value();
+        }
+        this.tableMisses += 1;
+        if (loaded != null) {
+            this.tables.remove(key);
+            loaded.value().close();
+        }
+        Log.info("Building Symbol Table.");
+        SymbolTable table = new SymbolTable(api, javaPath, options.classCacheSize(), options.cacheDirectory() == null ? null : SymbolDatabase.inCache(options.cacheDirectory()));
+        this.tables.put(key, new Loaded<>(table, table.fingerprint()));
+        evict(this.tables, MAX_SYMBOL_TABLES);
+        return table;
+    }
+
+    private ClassPath classPath(List<Path> paths, ConversionOptions options) throws IOException {
+        String fingerprint = ClassPath.fingerprint(paths);
+        Loaded<ClassPath> loaded = this.classPaths.get(paths);
+        if (loaded != null && loaded.fingerprint().equals(fingerprint)) {
+            this.classPathHits += 1;
+            return loaded.value();
+        }
+        this.classPathMisses += 1;
+        if (loaded != null) {
+            this.classPaths.remove(paths);
+            loaded.value().close();
+        }
+        ClassPath cp = new ClassPath(paths, options.classCacheSize(), options.cacheDirectory() == null ? null : ClassPathIndex.inCache(options.cacheDirectory()));
+        this.classPaths.put(paths, new Loaded<>(cp, fingerprint));
+        evict(this.classPaths, MAX_CLASS_PATHS);
+        return cp;
+    }
+
+    private int stats() {
+        Runtime runtime = Runtime.getRuntime();
+        long mb = 1024 * 1024;
+        Log.info("Uptime: " + ((System.currentTimeMillis() - this.startTime) / 1000) + "s, " + this.requests + " requests");
+        Log.info("Symbol tables: " + this.tables.size() + " loaded, " + this.tableHits + " hits, " + this.tableMisses + " misses");
+        for (Map.Entry<TableKey, Loaded<SymbolTable>> entry : this.tables.entrySet()) {
+            Log.info("  java " + entry.getKey().api().version + " from " + entry.getKey().javaPath() + ": " + entry.getValue().value().stats());
+        }
+        Log.info("Class paths: " + this.classPaths.size() + " loaded, " + this.classPathHits + " hits, " + this.classPathMisses + " misses");
+        for (Map.Entry<List<Path>, Loaded<ClassPath>> entry : this.classPaths.entrySet()) {
+            Log.info("  " + entry.getKey().size() + " files: " + entry.getValue().value().stats());
+        }
+        Log.info("Memory: " + ((runtime.totalMemory() - runtime.freeMemory()) / mb) + "MB used, " + (runtime.totalMemory() / mb) + "MB committed, " + (runtime.maxMemory() / mb) + "MB max");
+        return 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (this.server) {
+            evict(this.tables, 0);
+            evict(this.classPaths, 0);
+        } finally {
+            Files.deleteIfExists(this.socket);
+        }
+    }
+
+    private static <K, T extends Closeable> void evict(LinkedHashMap<K, Loaded<T>> map, int maxSize) throws IOException {
+        Iterator<Loaded<T>> itr = map.values().iterator();
+        while (map.size() > maxSize && itr.hasNext()) {
+            Loaded<T> loaded = itr.next();
+            itr.remove();
+            loaded.value().close();
+        }
+    }
+
+    private record TableKey(LanguageLevel api, Path javaPath) {}
+
+    // fingerprint identifies the files, the value was loaded from.
+    private record Loaded<T>(T value, String fingerprint) {}
+
+    // Sends each line written to the stream as a message to the client.
+    private static class MessageStream extends OutputStream {
+
+        private final DataOutputStream out;
+        private final int type;
+        private final ByteArrayOutputStream line;
+
+        private MessageStream(DataOutputStream out, int type) {
+            this.out = out;
+            this.type = type;
+            this.line = new ByteArrayOutputStream();
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (b == '\n') {
+                String msg = this.line.toString(StandardCharsets.UTF_8);
+                this.line.reset();
+                if (msg.endsWith("\r")) msg = msg.substring(0, msg.length() - 1);
+                synchronized (this.out) {
+                    this.out.writeInt(this.type);
+                    DaemonProtocol.writeString(this.out, msg);
+                    this.out.flush();
+                }
+            } else {
+                this.line.write(b);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.moddingx.ljc.daemon;
+
+import jakarta.annotation.Nullable;
+import org.moddingx.ljc.Log;
+
+import java.io.*;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+// Sends requests to a running daemon. Log messages of the daemon are passed to the local logs.
+public class DaemonClient {
+
+    public static int convert(Path socket, DaemonProtocol.ConvertRequest request) throws IOException {
+        return send(socket, DaemonProtocol.CONVERT, request);
+    }
+
+    public static int stats(Path socket) throws IOException {
+        return send(socket, DaemonProtocol.STATS, null);
+    }
+
+    public static int stop(Path socket) throws IOException {
+        return send(socket, DaemonProtocol.STOP, null);
+    }
+
+    private static int send(Path socket, int type, @Nullable DaemonProtocol.ConvertRequest request) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket.toAbsolutePath().normalize()))) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(DaemonProtocol.VERSION);
+            out.writeInt(type);
+            if (request != null) {
+                request.write(out);
+            }
+            out.flush();
+            while (true) {
+                int msg = in.readInt();
+                switch (msg) {
+                    case DaemonProtocol.INFO -> Log.info(DaemonProtocol.readString(in));
+                    case DaemonProtocol.ERROR -> Log.error(DaemonProtocol.readString(in));
+                    case DaemonProtocol.EXIT -> {
+                        return in.readInt();
+                    }
+                    default -> throw new IOException("Invalid message from daemon: " + msg);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.moddingx.ljc.daemon;
+
+import jakarta.annotation.Nullable;
+import org.moddingx.ljc.ConversionOptions;
+import org.moddingx.ljc.LanguageLevel;
+import org.moddingx.ljc.LegacyConverter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// A client opens a connection, sends the protocol version, a request type and the request. The daemon answers with
+// log messages, followed by an exit code.
+public class DaemonProtocol {
+
+    public static final int VERSION = 3;
+
+    public static final int CONVERT = 1;
+    public static final int STATS = 2;
+    public static final int STOP = 3;
+
+    public static final int INFO = 1;
+    public static final int ERROR = 2;
+    public static final int EXIT = 3;
+
+    public static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) throw new IOException("Invalid string length: " + len);
+        return new String(in.readNBytes(len), StandardCharsets.UTF_8);
+    }
+
+    private static void writePath(DataOutputStream out, Path path) throws IOException {
+        writeString(out, path.toAbsolutePath().normalize().toString());
+    }
+
+    private static Path readPath(DataInputStream in) throws IOException {
+        return Path.of(readString(in));
+    }
+
+    public record ConvertRequest(LanguageLevel api, Path javaPath, List<Path> classPath, List<LegacyConverter.Job> jobs, ConversionOptions options) {
+
+        public void write(DataOutputStream out) throws IOException {
+            out.writeInt(this.api.version);
+            writePath(out, this.javaPath);
+            out.writeInt(this.classPath.size());
+            for (Path path : this.classPath) {
+                writePath(out, path);
+            }
+            out.writeInt(this.jobs.size());
+            for (LegacyConverter.Job job : this.jobs) {
+                writePath(out, job.input());
+                writePath(out, job.output());
+            }
+            out.writeInt(this.options.threads());
+            out.writeBoolean(this.options.cacheDirectory() != null);
+            if (this.options.cacheDirectory() != null) {
+                writePath(out, this.options.cacheDirectory());
+            }
+            out.writeLong(this.options.cacheSize());
+            out.writeBoolean(this.options.multiRelease());
+            out.writeLong(this.options.classCacheSize());
+        }
+
+        public static ConvertRequest read(DataInputStream in) throws IOException {
+            LanguageLevel api = LanguageLevel.of(in.readInt());
+            Path javaPath = readPath(in);
+            int classPathSize = in.readInt();
+            List<Path> classPath = new ArrayList<>();
+            for (int i = 0; i < classPathSize; i++) {
+                classPath.add(readPath(in));
+            }
+            int jobCount = in.readInt();
+            List<LegacyConverter.Job> jobs = new ArrayList<>();
+            for (int i = 0; i < jobCount; i++) {
+                jobs.add(new LegacyConverter.Job(readPath(in), readPath(in)));
+            }
+            int threads = in.readInt();
+            @Nullable Path cacheDirectory = in.readBoolean() ? readPath(in) : null;
+            long cacheSize = in.readLong();
+            boolean multiRelease = in.readBoolean();
+            long classCacheSize = in.readLong();
+            return new ConvertRequest(api, javaPath, List.copyOf(classPath), List.copyOf(jobs), ConversionOptions.DEFAULT.withThreads(threads).withCache(cacheDirectory, cacheSize).withMultiRelease(multiRelease).withClassCacheSize(classCacheSize));
+        }
+    }
+}
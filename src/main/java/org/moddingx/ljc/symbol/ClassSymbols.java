@@ -0,0 +1,85 @@
+package org.moddingx.ljc.symbol;
+
+import org.moddingx.ljc.util.ClassHeader;
+
+// A class as it exists in the target level. Fields and methods are indexed by name and descriptor, so looking up a
+// member costs a few hash probes, independent of the number of members.
+public record ClassSymbols(ClassHeader header, Members fields, Members methods) {
+
+    // Rough number of bytes this class holds on the heap.
+    public long estimatedSize() {
+        return 32 + this.header.estimatedSize() + this.fields.estimatedSize() + this.methods.estimatedSize();
+    }
+
+    // Open addressing hash table from name and descriptor to access flags.
+    public static class Members {
+
+        private final int[] hashes;
+        private final String[] names;
+        private final String[] descs;
+        private final int[] access;
+        private int size;
+
+        Members(int expectedSize) {
+            int slots = Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) * 2;
+            this.hashes = new int[slots];
+            this.names = new String[slots];
+            this.descs = new String[slots];
+            this.access = new int[slots];
+            this.size = 0;
+        }
+
+        // Must not be called once the table is shared. Only the first member with a name and descriptor is kept.
+        void add(int access, String name, String desc) {
+            if (this.size * 2 >= this.names.length) {
+                throw new IllegalStateException("Member table is full");
+            }
+            int hash = hash(name, desc);
+            int slot = hash & (this.names.length - 1);
+            while (this.names[slot] != null) {
+                if (this.hashes[slot] == hash && this.names[slot].equals(name) && this.descs[slot].equals(desc)) return;
+                slot = (slot + 1) & (this.names.length - 1);
+            }
+            this.hashes[slot] = hash;
+            this.names[slot] = name;
+            this.descs[slot] = desc;
+            this.access[slot] = access;
+            this.size += 1;
+        }
+
+        public boolean contains(String name, String desc) {
+            return this.access(name, desc) >= 0;
+        }
+
+        // The access flags of the member, or -1 if there is no such member.
+        public int access(String name, String desc) {
+            int hash = hash(name, desc);
+            for (int slot = hash & (this.names.length - 1); ; slot = (slot + 1) & (this.names.length - 1)) {
+                String slotName = this.names[slot];
+                if (slotName == null) return -1;
+                if (this.hashes[slot] == hash && slotName.equals(name) && this.descs[slot].equals(desc)) {
+                    return this.access[slot];
+                }
+            }
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        private long estimatedSize() {
+            long size = 64 + 28L * this.names.length;
+            for (int slot = 0; slot < this.names.length; slot++) {
+                if (this.names[slot] != null) {
+                    size += ClassHeader.stringSize(this.names[slot]) + ClassHeader.stringSize(this.descs[slot]);
+                }
+            }
+            return size;
+        }
+
+        private static int hash(String name, String desc) {
+            int hash = 31 * name.hashCode() + desc.hashCode();
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
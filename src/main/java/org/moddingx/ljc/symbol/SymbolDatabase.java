@@ -0,0 +1,295 @@
+package org.moddingx.ljc.symbol;
+
+import jakarta.annotation.Nullable;
+import org.moddingx.ljc.LanguageLevel;
+import org.moddingx.ljc.util.ClassHeader;
+import org.moddingx.ljc.util.Fingerprint;
+import org.moddingx.ljc.util.RecordTable;
+import org.moddingx.ljc.zip.ZipReader;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Stores the symbols of a JDK for a target level on disk, so ct.sym and the module image of the JDK don't need to be
+// read on every run. A database holds every class of the JDK and the members of every class in the target level.
+// Database files are named after the path of the JDK and the target level and hold size and modification time of
+// ct.sym and the module image to detect changes. They are memory-mapped and hold a RecordTable, so opening a database
+// does not need to read it. Database files are kept in a subdirectory of the conversion cache.
+public class SymbolDatabase {
+
+    private static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 36;
+
+    // Flags of a class record
+    private static final int CURRENT = 1;
+    private static final int TARGET = 2;
+
+    private final Path path;
+
+    public SymbolDatabase(Path path) throws IOException {
+        this.path = path.toAbsolutePath().normalize();
+        Files.createDirectories(this.path);
+    }
+
+    public static SymbolDatabase inCache(Path cacheDirectory) throws IOException {
+        return new SymbolDatabase(cacheDirectory.resolve("symbols"));
+    }
+
+    // The JDK is only read, if it changed since the database was built.
+    public Level open(LanguageLevel api, Path javaPath) throws IOException {
+        Sources sources = Sources.of(javaPath);
+        Path file = this.path.resolve(new Fingerprint().add(FORMAT).add(sources.javaPath().toString()).add(api.version) + ".sym");
+        Level level = load(file, sources);
+        if (level == null) {
+            // Write to a temporary file first, so concurrent readers never see a partially written database.
+            Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    write(out, api, sources);
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            level = load(file, sources);
+            if (level == null) {
+                throw new IOException("Failed to build symbol database for " + sources.javaPath());
+            }
+        } else {
+            try {
+                Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+            } catch (IOException e) {
+                //
+            }
+        }
+        return level;
+    }
+
+    // Builds the symbols in memory without storing them.
+    public static Level build(LanguageLevel api, Path javaPath) throws IOException {
+        Sources sources = Sources.of(javaPath);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            write(out, api, sources);
+        }
+        Level level = load(ByteBuffer.wrap(bytes.toByteArray()), sources, sources.javaPath().toString());
+        if (level == null) {
+            throw new IOException("Failed to build symbol database for " + sources.javaPath());
+        }
+        return level;
+    }
+
+    @Nullable
+    private static Level load(Path file, Sources sources) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        return load(data, sources, file.toString());
+    }
+
+    @Nullable
+    private static Level load(ByteBuffer data, Sources sources, String source) {
+        if (data.limit() < HEADER_SIZE || data.getInt(0) != FORMAT || data.getLong(4) != sources.symbolsSize() || data.getLong(12) != sources.symbolsModified()
+                || data.getLong(20) != sources.modulesSize() || data.getLong(28) != sources.modulesModified()) {
+            return null;
+        }
+        try {
+            return new Level(source, new RecordTable(data, HEADER_SIZE));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Holds the file attributes of the sources followed by a record for each class.
+    private static void write(DataOutputStream out, LanguageLevel api, Sources sources) throws IOException {
+        RecordTable.Writer table = new RecordTable.Writer();
+        Set<String> current = currentClasses(sources.javaPath());
+        Set<String> written = new HashSet<>();
+        try (ZipReader zip = new ZipReader(sources.symbols())) {
+            // ct.sym holds a directory for each module in a directory named after the versions it applies to.
+            for (ZipReader.Entry entry : zip.entries()) {
+                String name = entry.name();
+                int versionEnd = name.indexOf('/');
+                int moduleEnd = name.indexOf('/', versionEnd + 1);
+                if (versionEnd < 0 || moduleEnd < 0 || !name.endsWith(".sig") || name.lastIndexOf(api.symbol, versionEnd) < 0) continue;
+                String cls = name.substring(moduleEnd + 1, name.length() - 4);
+                if (!written.add(cls)) continue;
+                ClassNode node = new ClassNode();
+                new ClassReader(zip.read(entry)).accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+                DataOutputStream record = table.add(cls);
+                record.writeInt(TARGET | (current.contains(cls) ? CURRENT : 0));
+                record.writeInt(node.access);
+                RecordTable.writeString(record, node.superName == null ? "" : node.superName);
+                record.writeInt(node.interfaces.size());
+                for (String itf : node.interfaces) {
+                    RecordTable.writeString(record, itf);
+                }
+                record.writeInt(node.fields.size());
+                for (FieldNode field : node.fields) {
+                    record.writeInt(field.access);
+                    RecordTable.writeString(record, field.name);
+                    RecordTable.writeString(record, field.desc);
+                }
+                record.writeInt(node.methods.size());
+                for (MethodNode method : node.methods) {
+                    record.writeInt(method.access);
+                    RecordTable.writeString(record, method.name);
+                    RecordTable.writeString(record, method.desc);
+                }
+            }
+        }
+        for (String cls : current) {
+            if (!written.contains(cls)) {
+                table.add(cls).writeInt(CURRENT);
+            }
+        }
+        out.writeInt(FORMAT);
+        out.writeLong(sources.symbolsSize());
+        out.writeLong(sources.symbolsModified());
+        out.writeLong(sources.modulesSize());
+        out.writeLong(sources.modulesModified());
+        table.writeTo(out, HEADER_SIZE);
+    }
+
+    // Every class in the JDK. Listing the jmods is faster than reading the module image, but many JDK distributions
+    // don't include them. The module image is read with the jrt file system of the JDK itself.
+    private static Set<String> currentClasses(Path javaPath) throws IOException {
+        Set<String> classes = new TreeSet<>();
+        Path jmodDir = javaPath.resolve("jmods");
+        if (Files.isDirectory(jmodDir)) {
+            List<Path> jmods;
+            try (Stream<Path> paths = Files.list(jmodDir)) {
+                jmods = paths.filter(p -> p.getFileName().toString().endsWith(".jmod")).filter(Files::isRegularFile).sorted().toList();
+            }
+            for (Path jmod : jmods) {
+                try (ZipReader zip = new ZipReader(jmod)) {
+                    for (ZipReader.Entry entry : zip.entries()) {
+                        if (entry.name().startsWith("classes/")) {
+                            addClass(classes, entry.name().substring(8));
+                        }
+                    }
+                }
+            }
+            return classes;
+        }
+        try (FileSystem fs = FileSystems.newFileSystem(URI.create("jrt:/"), Map.of("java.home", javaPath.toString()))) {
+            List<Path> moduleDirs;
+            try (Stream<Path> paths = Files.list(fs.getPath("/modules"))) {
+                moduleDirs = paths.toList();
+            }
+            for (Path moduleDir : moduleDirs) {
+                try (Stream<Path> paths = Files.walk(moduleDir)) {
+                    for (Path path : (Iterable<Path>) paths::iterator) {
+                        addClass(classes, moduleDir.relativize(path).toString());
+                    }
+                }
+            }
+        }
+        return classes;
+    }
+
+    private static void addClass(Set<String> classes, String fileName) {
+        String name = fileName.substring(fileName.lastIndexOf('/') + 1);
+        if (fileName.endsWith(".class") && !"module-info.class".equals(name) && !"package-info.class".equals(name)) {
+            classes.add(fileName.substring(0, fileName.length() - 6));
+        }
+    }
+
+    // The JDK files, the symbols are read from.
+    private record Sources(Path javaPath, Path symbols, long symbolsSize, long symbolsModified, Path modules, long modulesSize, long modulesModified) {
+
+        // Attributes are read before the files, so files that change while they are read are read again next time.
+        private static Sources of(Path javaPath) throws IOException {
+            Path jdk = javaPath.toAbsolutePath().normalize();
+            Path symbols = jdk.resolve("lib").resolve("ct.sym");
+            if (!Files.isRegularFile(symbols)) {
+                throw new IOException("ct.sym not found: " + symbols);
+            }
+            Path modules = jdk.resolve("lib").resolve("modules");
+            if (!Files.isRegularFile(modules)) {
+                throw new IOException("JDK module image not found: " + modules);
+            }
+            BasicFileAttributes symbolsAttributes = Files.readAttributes(symbols, BasicFileAttributes.class);
+            BasicFileAttributes modulesAttributes = Files.readAttributes(modules, BasicFileAttributes.class);
+            return new Sources(
+                    jdk, symbols, symbolsAttributes.size(), symbolsAttributes.lastModifiedTime().toMillis(),
+                    modules, modulesAttributes.size(), modulesAttributes.lastModifiedTime().toMillis()
+            );
+        }
+    }
+
+    // The symbols of a JDK for one target level.
+    public static class Level {
+
+        private final String source;
+        private final RecordTable classes;
+
+        private Level(String source, RecordTable classes) {
+            this.source = source;
+            this.classes = classes;
+        }
+
+        // Whether the class exists in the JDK, the symbols were built from.
+        public boolean isCurrent(String cls) throws IOException {
+            return this.isCurrent(cls, 0, cls.length());
+        }
+
+        // Whether the class named by the part of name from start to end exists in the JDK, the symbols were built from.
+        public boolean isCurrent(String name, int start, int end) throws IOException {
+            try {
+                int pos = this.classes.find(name, start, end);
+                return pos >= 0 && (this.classes.data().getInt(pos) & CURRENT) != 0;
+            } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Corrupt symbol database: " + this.source, e);
+            }
+        }
+
+        // The class as it exists in the target level.
+        @Nullable
+        public ClassSymbols find(String cls) throws IOException {
+            try {
+                ByteBuffer data = this.classes.get(cls);
+                if (data == null || (data.getInt() & TARGET) == 0) return null;
+                int access = data.getInt();
+                String superName = RecordTable.readString(data);
+                String[] interfaces = new String[data.getInt()];
+                for (int i = 0; i < interfaces.length; i++) {
+                    interfaces[i] = RecordTable.readString(data);
+                }
+                ClassSymbols.Members fields = readMembers(data);
+                ClassSymbols.Members methods = readMembers(data);
+                return new ClassSymbols(new ClassHeader(cls, access, superName.isEmpty() ? null : superName, List.of(interfaces)), fields, methods);
+            } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Corrupt symbol database: " + this.source, e);
+            }
+        }
+
+        private static ClassSymbols.Members readMembers(ByteBuffer data) {
+            int count = data.getInt();
+            ClassSymbols.Members members = new ClassSymbols.Members(count);
+            for (int i = 0; i < count; i++) {
+                members.add(data.getInt(), RecordTable.readString(data), RecordTable.readString(data));
+            }
+            return members;
+        }
+    }
+}
@@ -1,258 +1,272 @@
 package org.moddingx.ljc.symbol;
 
 import jakarta.annotation.Nullable;
+import org.moddingx.ljc.ConversionOptions;
 import org.moddingx.ljc.LanguageLevel;
-import org.moddingx.ljc.LegacyConverter;
 import org.moddingx.ljc.Log;
+import org.moddingx.ljc.util.CacheStats;
+import org.moddingx.ljc.util.ClassCache;
+import org.moddingx.ljc.util.ClassHeader;
 import org.moddingx.ljc.util.ClassAccessor;
+import org.moddingx.ljc.util.Fingerprint;
 import org.objectweb.asm.*;
 import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.FieldNode;
-import org.objectweb.asm.tree.MethodNode;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.FileSystem;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 // SymbolTable only checks for existence, not accessibility.
 public class SymbolTable implements ClassAccessor, Closeable {
     
-    private static final Pattern OBJECT_PATTERN = Pattern.compile("L([^;]+);");
+    // Limit for the number of verified descriptors kept. The set is cleared, when it is reached.
+    private static final int MAX_VERIFIED_DESCRIPTORS = 1 << 16;
+    // Cached result of findMatchingMethod, if no method matches.
+    private static final MethodMatch NO_MATCH = new MethodMatch(null, List.of());
     
     private final LanguageLevel api;
-    private final FileSystem fileSystem;
-    private final List<Path> scanPaths;
-    private final Set<String> allCurrentClasses;
-    private final Map<String, ClassNode> classes;
+    private final SymbolDatabase.Level symbols;
+    private final ClassCache<ClassSymbols> classes;
+    // Results of findMatchingMethod. The same JDK methods are called from many classes, so each of them is only
+    // resolved once. Only holds small records, so it is not bounded like the class cache.
+    private final ConcurrentMap<MethodRef, MethodMatch> matchingMethods;
+    // Descriptors, that only reference classes in the target level. Method descriptors repeat a lot between classes,
+    // so each of them is only checked once.
+    private final Set<String> verifiedDescriptors;
+    private final String fingerprint;
     
     public SymbolTable(LanguageLevel api, Path path) throws IOException {
+        this(api, path, ConversionOptions.DEFAULT_CLASS_CACHE_SIZE, null);
+    }
+    
+    public SymbolTable(LanguageLevel api, Path path, long cacheSize) throws IOException {
+        this(api, path, cacheSize, null);
+    }
+    
+    // cacheSize is the maximum size of parsed class data kept in memory in bytes. Without a database, symbols are read
+    // from the JDK each time a symbol table is created.
+    public SymbolTable(LanguageLevel api, Path path, long cacheSize, @Nullable SymbolDatabase database) throws IOException {
         this.api = api;
-        Path symTable = path.resolve("lib").resolve("ct.sym").toAbsolutePath().normalize();
-        if (!Files.isRegularFile(symTable)) {
-            throw new IOException("ct.sym not found: " + symTable);
-        }
-        this.fileSystem = LegacyConverter.jarFS(symTable);
-        try (Stream<Path> paths = Files.list(this.fileSystem.getPath("/"))) {
-            List<Path> scanDirs = paths.filter(Files::isDirectory)
-                    .map(Path::toAbsolutePath)
-                    .filter(p -> p.getFileName().toString().indexOf(api.symbol) >= 0)
-                    .toList();
-            List<Path> scanPaths = new ArrayList<>();
-            for (Path scanDir : scanDirs) {
-                try (Stream<Path> modules = Files.list(scanDir)) {
-                    modules.map(Path::toAbsolutePath)
-                            .map(Path::normalize)
-                            .forEach(scanPaths::add);
-                }
-            }
-            this.scanPaths = List.copyOf(scanPaths);
-        }
-        this.allCurrentClasses = loadAllClasses(path);
-        this.classes = new HashMap<>();
+        this.symbols = database == null ? SymbolDatabase.build(api, path) : database.open(api, path);
+        this.classes = new ClassCache<>(cacheSize, ClassSymbols::estimatedSize);
+        this.matchingMethods = new ConcurrentHashMap<>();
+        this.verifiedDescriptors = ConcurrentHashMap.newKeySet();
+        this.fingerprint = fingerprint(path);
     }
     
     public boolean check(ClassNode cls) {
+        return this.check(cls, Log::error);
+    }
+    
+    // Reports each missing symbol to errors. Returns false if any symbol is missing.
+    public boolean check(ClassNode cls, Consumer<String> errors) {
         AtomicBoolean failed = new AtomicBoolean(false);
-        ClassVisitor visitor = new Visitor(cls.name, failed);
-        cls.accept(visitor);
+        cls.accept(new Visitor(null, failed, errors));
         return !failed.get();
     }
+    
+    // Checks a class while it is passed on to visitor unchanged, so a class can be checked while it is written,
+    // without visiting it again. Reports each missing symbol to errors.
+    public ClassVisitor checking(ClassVisitor visitor, Consumer<String> errors) {
+        return new Visitor(visitor, new AtomicBoolean(false), errors);
+    }
+    
+    public LanguageLevel api() {
+        return this.api;
+    }
+    
+    // Identifies the JDK files, the symbol table is built from.
+    public String fingerprint() {
+        return this.fingerprint;
+    }
+    
+    public static String fingerprint(Path javaPath) throws IOException {
+        return new Fingerprint().addFile(javaPath.resolve("lib").resolve("ct.sym")).addFile(javaPath.resolve("lib").resolve("modules")).toString();
+    }
+    
+    public CacheStats stats() {
+        return this.classes.stats();
+    }
 
+    // The symbol database is released together with the table.
     @Override
     public void close() throws IOException {
-        this.fileSystem.close();
+        //
     }
 
     @Nullable
-    public ClassNode get(String cls) throws IOException {
-        if (!this.classes.containsKey(cls)) {
-            Path found = null;
-            for (Path scan : this.scanPaths) {
-                Path test = scan.resolve(cls + ".sig");
-                if (Files.isRegularFile(test)) {
-                    found = test;
-                    break;
-                }
-            }
-            if (found != null) {
-                try (InputStream in = Files.newInputStream(found)) {
-                    ClassReader cr = new ClassReader(in);
-                    ClassNode node = new ClassNode();
-                    cr.accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
-                    this.classes.put(cls, node);
-                }
-            } else {
-                this.classes.put(cls, null);
-            }
-        }
-        return this.classes.get(cls);
+    @Override
+    public ClassHeader get(String cls) throws IOException {
+        ClassSymbols symbols = this.findClass(cls);
+        return symbols == null ? null : symbols.header();
+    }
+    
+    // Full class with all members, as needed to check member references.
+    @Nullable
+    public ClassSymbols findClass(String cls) throws IOException {
+        return this.classes.get(cls, this.symbols::find);
     }
     
     // If a method is added in a later release, that overrides a method that exists in the older release,
     // we need to change it to the more broader method that exists in the older release.
     public OwnerReplace replaceWithOverriddenMethod(int opcode, String owner, String name, String desc, boolean isInterface) {
-        if (this.allCurrentClasses.contains(owner) && (opcode == Opcodes.INVOKEVIRTUAL || opcode == Opcodes.INVOKEINTERFACE)) {
-            try {
-                OwnerReplace match = this.findMatchingMethod(owner, name, desc);
-                return match == null ? new OwnerReplace(opcode, owner, isInterface) : match;
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        } else {
+        return this.replaceWithOverriddenMethod(opcode, owner, name, desc, isInterface, Log::error);
+    }
+    
+    // Reports to errors, if the overridden method is ambiguous.
+    public OwnerReplace replaceWithOverriddenMethod(int opcode, String owner, String name, String desc, boolean isInterface, Consumer<String> errors) {
+        if (opcode != Opcodes.INVOKEVIRTUAL && opcode != Opcodes.INVOKEINTERFACE) {
             return new OwnerReplace(opcode, owner, isInterface);
         }
+        try {
+            if (!this.symbols.isCurrent(owner)) {
+                return new OwnerReplace(opcode, owner, isInterface);
+            }
+            MethodMatch match = this.findMatchingMethod(owner, name, desc);
+            match.errors().forEach(errors);
+            return match.owner() == null ? new OwnerReplace(opcode, owner, isInterface) : match.owner();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
     
-    @Nullable
-    private OwnerReplace findMatchingMethod(String owner, String name, String desc) throws IOException {
-        ClassNode cls = this.get(owner);
-        if (cls == null) return null;
-        for (MethodNode method : cls.methods) {
-            if ((method.access & Opcodes.ACC_PRIVATE) == 0 && name.equals(method.name) && desc.equals(method.desc)) {
-                boolean isInterface = (cls.access & Opcodes.ACC_INTERFACE) != 0;
-                return new OwnerReplace(isInterface ? Opcodes.INVOKEINTERFACE : Opcodes.INVOKEVIRTUAL, owner, isInterface);
-            }
+    private MethodMatch findMatchingMethod(String owner, String name, String desc) throws IOException {
+        MethodRef ref = new MethodRef(owner, name, desc);
+        MethodMatch match = this.matchingMethods.get(ref);
+        if (match == null) {
+            // Not computeIfAbsent, as resolving a method looks up the methods of its supertypes.
+            match = this.resolveMatchingMethod(owner, name, desc);
+            this.matchingMethods.putIfAbsent(ref, match);
         }
-        Set<OwnerReplace> allOwners = new HashSet<>();
-        if (cls.superName != null) {
-            allOwners.add(this.findMatchingMethod(cls.superName, name, desc));
+        return match;
+    }
+    
+    private MethodMatch resolveMatchingMethod(String owner, String name, String desc) throws IOException {
+        ClassSymbols cls = this.findClass(owner);
+        if (cls == null) return NO_MATCH;
+        int access = cls.methods().access(name, desc);
+        if (access >= 0 && (access & Opcodes.ACC_PRIVATE) == 0) {
+            boolean isInterface = (cls.header().access() & Opcodes.ACC_INTERFACE) != 0;
+            return new MethodMatch(new OwnerReplace(isInterface ? Opcodes.INVOKEINTERFACE : Opcodes.INVOKEVIRTUAL, owner, isInterface), List.of());
         }
-        if (cls.interfaces != null) {
-            for (String itf : cls.interfaces) {
-                allOwners.add(this.findMatchingMethod(itf, name, desc));
+        OwnerReplace found = null;
+        // Only created, if supertypes disagree on the owner or report errors.
+        Set<OwnerReplace> allOwners = null;
+        Set<String> errors = null;
+        List<String> supertypes = new ArrayList<>(cls.header().interfaces().size() + 1);
+        if (cls.header().superName() != null) supertypes.add(cls.header().superName());
+        supertypes.addAll(cls.header().interfaces());
+        for (String supertype : supertypes) {
+            MethodMatch supertypeMatch = this.findMatchingMethod(supertype, name, desc);
+            if (!supertypeMatch.errors().isEmpty()) {
+                if (errors == null) errors = new LinkedHashSet<>();
+                errors.addAll(supertypeMatch.errors());
+            }
+            OwnerReplace match = supertypeMatch.owner();
+            if (match == null || match.equals(found)) continue;
+            if (found == null) {
+                found = match;
+            } else {
+                if (allOwners == null) {
+                    allOwners = new HashSet<>();
+                    allOwners.add(found);
+                }
+                allOwners.add(match);
             }
         }
-        allOwners.remove(null);
-        if (allOwners.isEmpty()) {
-            return null;
-        } else if (allOwners.size() == 1) {
-            return allOwners.iterator().next();
-        } else {
-            Log.error("Ambiguous method call: Could not track overridden owner for " + owner + " " + name + desc + ", multiple matching: " + allOwners.stream().map(OwnerReplace::owner).sorted().collect(Collectors.joining(", ")));
-            return null;
+        if (allOwners != null) {
+            if (errors == null) errors = new LinkedHashSet<>();
+            errors.add("Ambiguous method call: Could not track overridden owner for " + owner + " " + name + desc + ", multiple matching: " + allOwners.stream().map(OwnerReplace::owner).sorted().collect(Collectors.joining(", ")));
+            found = null;
         }
+        if (found == null && errors == null) return NO_MATCH;
+        return new MethodMatch(found, errors == null ? List.of() : List.copyOf(errors));
     }
 
     private boolean missingClass(String cls) throws IOException {
-        return this.allCurrentClasses.contains(cls) && this.get(cls) == null;
+        return this.symbols.isCurrent(cls) && this.findClass(cls) == null;
+    }
+    
+    // Checks the class named by the part of name from start to end. Only classes of the current JDK are copied out
+    // of the name, to look them up in the target level.
+    private boolean missingClass(String name, int start, int end) throws IOException {
+        return this.symbols.isCurrent(name, start, end) && this.findClass(name.substring(start, end)) == null;
     }
     
     private boolean missingDesc(String desc) throws IOException {
-        if (desc.startsWith("L") && desc.endsWith(";")) {
-            return this.missingClass(desc.substring(1, desc.length() - 1));
+        if (desc.length() >= 2 && desc.charAt(0) == 'L' && desc.charAt(desc.length() - 1) == ';') {
+            return this.missingClass(desc, 1, desc.length() - 1);
         } else {
             return false;
         }
     }
     
+    // Checks every class referenced in the descriptor.
     private boolean missingDescAny(String desc) throws IOException {
-        try {
-            return OBJECT_PATTERN.matcher(desc).results().anyMatch(r -> {
-                try {
-                    return this.missingClass(r.group(1));
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
-        } catch (RuntimeException e) {
-            if (e.getCause() instanceof IOException x) {
-                throw x;
+        if (this.verifiedDescriptors.contains(desc)) return false;
+        int idx = 0;
+        while (idx < desc.length()) {
+            if (desc.charAt(idx) == 'L') {
+                int end = desc.indexOf(';', idx + 1);
+                if (end < 0) break;
+                if (end > idx + 1 && this.missingClass(desc, idx + 1, end)) return true;
+                idx = end + 1;
             } else {
-                throw e;
+                idx += 1;
             }
         }
+        if (this.verifiedDescriptors.size() >= MAX_VERIFIED_DESCRIPTORS) {
+            this.verifiedDescriptors.clear();
+        }
+        this.verifiedDescriptors.add(desc);
+        return false;
     }
     
     private boolean missingField(String owner, String name, String desc) throws IOException {
-        if (this.allCurrentClasses.contains(owner)) {
-            ClassNode cls = this.get(owner);
-            if (cls == null) return true;
-            for (FieldNode field : cls.fields) {
-                if (name.equals(field.name) && desc.equals(field.desc)) {
-                    return false;
-                }
-            }
-            return true;
+        if (this.symbols.isCurrent(owner)) {
+            ClassSymbols cls = this.findClass(owner);
+            return cls == null || !cls.fields().contains(name, desc);
         } else {
             return false;
         }
     }
     
     private boolean missingMethod(String owner, String name, String desc) throws IOException {
-        if (this.allCurrentClasses.contains(owner)) {
-            ClassNode cls = this.get(owner);
-            if (cls == null) return true;
-            for (MethodNode method : cls.methods) {
-                if (name.equals(method.name) && desc.equals(method.desc)) {
-                    return false;
-                }
-            }
-            return true;
+        if (this.symbols.isCurrent(owner)) {
+            ClassSymbols cls = this.findClass(owner);
+            return cls == null || !cls.methods().contains(name, desc);
         } else {
             return false;
         }
     }
     
-    private static Set<String> loadAllClasses(Path jdkPath) throws IOException {
-        Path jmodDir = jdkPath.resolve("jmods").toAbsolutePath().normalize();
-        if (!Files.isDirectory(jmodDir)) {
-            throw new IOException("JDK modules not found: " + jmodDir);
-        }
-        List<Path> jmods;
-        try (Stream<Path> paths = Files.list(jmodDir)) {
-             jmods = paths.filter(Files::isRegularFile)
-                    .map(Path::toAbsolutePath)
-                    .filter(p -> p.getFileName().toString().endsWith(".jmod"))
-                    .toList();
-        }
-        Set<String> classes = new HashSet<>();
-        for (Path jmod : jmods) {
-            try (
-                    FileSystem fs = LegacyConverter.jarFS(jmod);
-                    Stream<Path> paths = Files.walk(fs.getPath("/classes"))
-            ) {
-                Path classesBase = fs.getPath("/classes");
-                paths.map(Path::toAbsolutePath)
-                        .filter(Files::isRegularFile)
-                        .filter(p -> p.getFileName().toString().endsWith(".class"))
-                        .filter(p -> !"module-info.class".equals(p.getFileName().toString()))
-                        .filter(p -> !"package-info.class".equals(p.getFileName().toString()))
-                        .map(classesBase::relativize)
-                        .map(p -> IntStream.range(0, p.getNameCount())
-                                .mapToObj(p::getName)
-                                .map(Path::toString)
-                                .collect(Collectors.joining("/"))
-                        )
-                        .map(str -> str.substring(0, str.length() - 6))
-                        .forEach(classes::add);
-            }
-        }
-        return Set.copyOf(classes);
-    }
-    
+    // Passes everything on to the next visitor. Once a symbol of an annotation or member is reported, the rest of it is
+    // passed on without checking it.
     @SuppressWarnings("UnusedReturnValue")
     private class Visitor extends ClassVisitor {
         
-        private final String clsName;
         private final AtomicBoolean failed;
+        private final Consumer<String> errors;
+        private String clsName;
 
-        private Visitor(String clsName, AtomicBoolean failed) {
-            super(SymbolTable.this.api.asm);
-            this.clsName = clsName;
+        private Visitor(@Nullable ClassVisitor visitor, AtomicBoolean failed, Consumer<String> errors) {
+            // Newest api, as everything is passed on to the next visitor.
+            super(Opcodes.ASM9, visitor);
             this.failed = failed;
+            this.errors = errors;
+            this.clsName = "";
         }
 
         @Override
         public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            super.visit(version, access, name, signature, superName, interfaces);
+            this.clsName = name;
             if (superName != null) {
                 this.reportClass(superName, "#extends");
             }
@@ -265,36 +279,40 @@ public class SymbolTable implements ClassAccessor, Closeable {
 
         @Override
         public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-            if (this.reportDesc(descriptor, "#annotation")) return null;
-            return new SymbolAnnotationVisitor(this.api, "#annotation");
+            AnnotationVisitor next = super.visitAnnotation(descriptor, visible);
+            if (this.reportDesc(descriptor, "#annotation")) return next;
+            return new SymbolAnnotationVisitor(this.api, next, "#annotation");
         }
 
         @Override
         public void visitPermittedSubclass(String permittedSubclass) {
+            super.visitPermittedSubclass(permittedSubclass);
             this.reportClass(permittedSubclass, "#permits");
         }
 
         @Override
         public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
-            if (this.reportDesc(descriptor, name)) return null;
-            return new SymbolFieldVisitor(this.api, name);
+            FieldVisitor next = super.visitField(access, name, descriptor, signature, value);
+            if (this.reportDesc(descriptor, name)) return next;
+            return new SymbolFieldVisitor(this.api, next, name);
         }
 
         @Override
         public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
-            if (this.reportDescAny(descriptor, name + descriptor)) return null;
+            MethodVisitor next = super.visitMethod(access, name, descriptor, signature, exceptions);
+            if (this.reportDescAny(descriptor, name + descriptor)) return next;
             if (exceptions != null) {
                 for (String ex : exceptions) {
                     this.reportClass(ex, name + descriptor + "#exc");
                 }
             }
-            return new SymbolMethodVisitor(this.api, name + descriptor);
+            return new SymbolMethodVisitor(this.api, next, name + descriptor);
         }
         
         private boolean reportClass(String cls, String from) {
             try {
                 if (SymbolTable.this.missingClass(cls)) {
-                    Log.error("In " + this.clsName + " (" + from + "): Class not found in java " + SymbolTable.this.api.version + ": " + cls);
+                    this.errors.accept("In " + this.clsName + " (" + from + "): Class not found in java " + SymbolTable.this.api.version + ": " + cls);
                     this.failed.set(true);
                     return true;
                 } else {
@@ -308,7 +326,7 @@ public class SymbolTable implements ClassAccessor, Closeable {
         private boolean reportDesc(String desc, String from) {
             try {
                 if (SymbolTable.this.missingDesc(desc)) {
-                    Log.error("In " + this.clsName + " (" + from + "): Type not found in java " + SymbolTable.this.api.version + ": " + desc);
+                    this.errors.accept("In " + this.clsName + " (" + from + "): Type not found in java " + SymbolTable.this.api.version + ": " + desc);
                     this.failed.set(true);
                     return true;
                 } else {
@@ -322,7 +340,7 @@ public class SymbolTable implements ClassAccessor, Closeable {
         private boolean reportDescAny(String desc, String from) {
             try {
                 if (SymbolTable.this.missingDescAny(desc)) {
-                    Log.error("In " + this.clsName + " (" + from + "): Descriptor not found in java " + SymbolTable.this.api.version + ": " + desc);
+                    this.errors.accept("In " + this.clsName + " (" + from + "): Descriptor not found in java " + SymbolTable.this.api.version + ": " + desc);
                     this.failed.set(true);
                     return true;
                 } else {
@@ -336,7 +354,7 @@ public class SymbolTable implements ClassAccessor, Closeable {
         private boolean reportField(String owner, String name, String desc, String from) {
             try {
                 if (SymbolTable.this.missingField(owner, name, desc)) {
-                    Log.error("In " + this.clsName + " (" + from + "): Field not found in java " + SymbolTable.this.api.version + ": " + owner + " " + name + " " + desc);
+                    this.errors.accept("In " + this.clsName + " (" + from + "): Field not found in java " + SymbolTable.this.api.version + ": " + owner + " " + name + " " + desc);
                     this.failed.set(true);
                     return true;
                 } else {
@@ -350,7 +368,7 @@ public class SymbolTable implements ClassAccessor, Closeable {
         private boolean reportMethod(String owner, String name, String desc, String from) {
             try {
                 if (SymbolTable.this.missingMethod(owner, name, desc)) {
-                    Log.error("In " + this.clsName + " (" + from + "): Method not found in java " + SymbolTable.this.api.version + ": " + owner + " " + name + " " + desc);
+                    this.errors.accept("In " + this.clsName + " (" + from + "): Method not found in java " + SymbolTable.this.api.version + ": " + owner + " " + name + " " + desc);
                     this.failed.set(true);
                     return true;
                 } else {
@@ -388,25 +406,27 @@ public class SymbolTable implements ClassAccessor, Closeable {
 
             private final String from;
             
-            public SymbolAnnotationVisitor(int api, String from) {
-                super(api);
+            public SymbolAnnotationVisitor(int api, @Nullable AnnotationVisitor visitor, String from) {
+                super(api, visitor);
                 this.from = from;
             }
 
             @Override
             public void visitEnum(String name, String descriptor, String value) {
+                super.visitEnum(name, descriptor, value);
                 Visitor.this.reportDesc(descriptor, this.from);
             }
 
             @Override
             public AnnotationVisitor visitAnnotation(String name, String descriptor) {
-                if (Visitor.this.reportDesc(descriptor, this.from)) return null;
-                return this;
+                AnnotationVisitor next = super.visitAnnotation(name, descriptor);
+                if (Visitor.this.reportDesc(descriptor, this.from)) return next;
+                return new SymbolAnnotationVisitor(this.api, next, this.from);
             }
 
             @Override
             public AnnotationVisitor visitArray(String name) {
-                return this;
+                return new SymbolAnnotationVisitor(this.api, super.visitArray(name), this.from);
             }
         }
             
@@ -414,15 +434,16 @@ public class SymbolTable implements ClassAccessor, Closeable {
 
             private final String from;
             
-            public SymbolFieldVisitor(int api, String from) {
-                super(api);
+            public SymbolFieldVisitor(int api, @Nullable FieldVisitor visitor, String from) {
+                super(api, visitor);
                 this.from = from;
             }
 
             @Override
             public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-                if (Visitor.this.reportDesc(descriptor, this.from + "#annotation")) return null;
-                return new SymbolAnnotationVisitor(this.api, this.from + "annotation");
+                AnnotationVisitor next = super.visitAnnotation(descriptor, visible);
+                if (Visitor.this.reportDesc(descriptor, this.from + "#annotation")) return next;
+                return new SymbolAnnotationVisitor(this.api, next, this.from + "annotation");
             }
         }
             
@@ -430,40 +451,46 @@ public class SymbolTable implements ClassAccessor, Closeable {
 
             private final String from;
 
-            protected SymbolMethodVisitor(int api, String from) {
-                super(api);
+            protected SymbolMethodVisitor(int api, @Nullable MethodVisitor visitor, String from) {
+                super(api, visitor);
                 this.from = from;
             }
 
             @Override
             public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-                if (Visitor.this.reportDesc(descriptor, this.from + "#annotation")) return null;
-                return new SymbolAnnotationVisitor(this.api, this.from + "#annotation");
+                AnnotationVisitor next = super.visitAnnotation(descriptor, visible);
+                if (Visitor.this.reportDesc(descriptor, this.from + "#annotation")) return next;
+                return new SymbolAnnotationVisitor(this.api, next, this.from + "#annotation");
             }
 
             @Override
             public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
-                if (Visitor.this.reportDesc(descriptor, this.from + "#param_annotation")) return null;
-                return new SymbolAnnotationVisitor(this.api, this.from + "#param_annotation");
+                AnnotationVisitor next = super.visitParameterAnnotation(parameter, descriptor, visible);
+                if (Visitor.this.reportDesc(descriptor, this.from + "#param_annotation")) return next;
+                return new SymbolAnnotationVisitor(this.api, next, this.from + "#param_annotation");
             }
 
             @Override
             public void visitTypeInsn(int opcode, String type) {
+                super.visitTypeInsn(opcode, type);
                 Visitor.this.reportClass(type, this.from);
             }
 
             @Override
             public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+                super.visitFieldInsn(opcode, owner, name, descriptor);
                 Visitor.this.reportField(owner, name, descriptor, this.from);
             }
 
             @Override
             public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
                 Visitor.this.reportMethod(owner, name, descriptor, this.from);
             }
 
             @Override
             public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+                super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
                 if (Visitor.this.reportHandle(bootstrapMethodHandle, this.from)) return;
                 for (Object arg : bootstrapMethodArguments) {
                     Visitor.this.reportArg(arg, this.from);
@@ -472,30 +499,35 @@ public class SymbolTable implements ClassAccessor, Closeable {
 
             @Override
             public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+                super.visitMultiANewArrayInsn(descriptor, numDimensions);
                 Visitor.this.reportDesc(descriptor, this.from);
             }
 
             @Override
             public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
-                if (Visitor.this.reportDesc(descriptor, this.from + "#localannotation")) return null;
-                return new SymbolAnnotationVisitor(this.api, this.from + "#localannotation");
+                AnnotationVisitor next = super.visitInsnAnnotation(typeRef, typePath, descriptor, visible);
+                if (Visitor.this.reportDesc(descriptor, this.from + "#localannotation")) return next;
+                return new SymbolAnnotationVisitor(this.api, next, this.from + "#localannotation");
             }
 
             @Override
             public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
-                if (Visitor.this.reportDesc(descriptor, this.from + "#localannotation")) return null;
-                return new SymbolAnnotationVisitor(this.api, this.from + "#localannotation");
+                AnnotationVisitor next = super.visitTryCatchAnnotation(typeRef, typePath, descriptor, visible);
+                if (Visitor.this.reportDesc(descriptor, this.from + "#localannotation")) return next;
+                return new SymbolAnnotationVisitor(this.api, next, this.from + "#localannotation");
             }
 
             @Override
             public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+                super.visitLocalVariable(name, descriptor, signature, start, end, index);
                 Visitor.this.reportDesc(descriptor, this.from);
             }
 
             @Override
             public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start, Label[] end, int[] index, String descriptor, boolean visible) {
-                if (Visitor.this.reportDesc(descriptor, this.from + "#localannotation")) return null;
-                return new SymbolAnnotationVisitor(this.api, this.from + "#localannotation");
+                AnnotationVisitor next = super.visitLocalVariableAnnotation(typeRef, typePath, start, end, index, descriptor, visible);
+                if (Visitor.this.reportDesc(descriptor, this.from + "#localannotation")) return next;
+                return new SymbolAnnotationVisitor(this.api, next, this.from + "#localannotation");
             }
         }
     }
@@ -503,4 +535,10 @@ public class SymbolTable implements ClassAccessor, Closeable {
     public record OwnerReplace(int opcode, String owner, boolean isInterface) {
         
     }
+    
+    private record MethodRef(String owner, String name, String desc) {}
+    
+    // Result of findMatchingMethod. Errors are kept with the result, so they are reported for every class that calls
+    // the method, not only for the first one.
+    private record MethodMatch(@Nullable OwnerReplace owner, List<String> errors) {}
 }
@@ -1,10 +1,9 @@
 package org.moddingx.ljc.util;
 
 import org.objectweb.asm.*;
-import org.objectweb.asm.tree.AbstractInsnNode;
-import org.objectweb.asm.tree.InsnList;
-import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.*;
 
+import java.util.*;
 import java.util.function.Predicate;
 
 public class Bytecode {
@@ -185,4 +184,58 @@ public class Bytecode {
         node.invisibleLocalVariableAnnotations = null;
         node.visibleLocalVariableAnnotations = null;
     }
+    
+    // Whether two methods have the same instructions and exception handlers, so the frames of one are also valid for
+    // the other. Frames themselves are not compared.
+    public static boolean sameCode(MethodNode a, MethodNode b) {
+        if (!a.desc.equals(b.desc) || (a.access & Opcodes.ACC_STATIC) != (b.access & Opcodes.ACC_STATIC) || a.instructions.size() != b.instructions.size()) return false;
+        for (AbstractInsnNode x = a.instructions.getFirst(), y = b.instructions.getFirst(); x != null && y != null; x = x.getNext(), y = y.getNext()) {
+            if (!sameInsn(a.instructions, x, b.instructions, y)) return false;
+        }
+        List<TryCatchBlockNode> tryCatchA = a.tryCatchBlocks == null ? List.of() : a.tryCatchBlocks;
+        List<TryCatchBlockNode> tryCatchB = b.tryCatchBlocks == null ? List.of() : b.tryCatchBlocks;
+        if (tryCatchA.size() != tryCatchB.size()) return false;
+        for (int i = 0; i < tryCatchA.size(); i++) {
+            TryCatchBlockNode x = tryCatchA.get(i);
+            TryCatchBlockNode y = tryCatchB.get(i);
+            if (!Objects.equals(x.type, y.type)
+                    || a.instructions.indexOf(x.start) != b.instructions.indexOf(y.start)
+                    || a.instructions.indexOf(x.end) != b.instructions.indexOf(y.end)
+                    || a.instructions.indexOf(x.handler) != b.instructions.indexOf(y.handler)) return false;
+        }
+        return true;
+    }
+    
+    private static boolean sameInsn(InsnList listA, AbstractInsnNode a, InsnList listB, AbstractInsnNode b) {
+        if (a.getType() != b.getType() || a.getOpcode() != b.getOpcode()) return false;
+        return switch (a) {
+            case InsnNode x -> true;
+            case LabelNode x -> true;
+            case FrameNode x -> true;
+            case LineNumberNode x -> b instanceof LineNumberNode y && x.line == y.line && listA.indexOf(x.start) == listB.indexOf(y.start);
+            case IntInsnNode x -> b instanceof IntInsnNode y && x.operand == y.operand;
+            case VarInsnNode x -> b instanceof VarInsnNode y && x.var == y.var;
+            case TypeInsnNode x -> b instanceof TypeInsnNode y && x.desc.equals(y.desc);
+            case FieldInsnNode x -> b instanceof FieldInsnNode y && x.owner.equals(y.owner) && x.name.equals(y.name) && x.desc.equals(y.desc);
+            case MethodInsnNode x -> b instanceof MethodInsnNode y && x.owner.equals(y.owner) && x.name.equals(y.name) && x.desc.equals(y.desc) && x.itf == y.itf;
+            case InvokeDynamicInsnNode x -> b instanceof InvokeDynamicInsnNode y && x.name.equals(y.name) && x.desc.equals(y.desc) && x.bsm.equals(y.bsm) && Arrays.equals(x.bsmArgs, y.bsmArgs);
+            case JumpInsnNode x -> b instanceof JumpInsnNode y && listA.indexOf(x.label) == listB.indexOf(y.label);
+            case LdcInsnNode x -> b instanceof LdcInsnNode y && x.cst.equals(y.cst);
+            case IincInsnNode x -> b instanceof IincInsnNode y && x.var == y.var && x.incr == y.incr;
+            case TableSwitchInsnNode x -> b instanceof TableSwitchInsnNode y && x.min == y.min && x.max == y.max
+                    && listA.indexOf(x.dflt) == listB.indexOf(y.dflt) && sameLabels(listA, x.labels, listB, y.labels);
+            case LookupSwitchInsnNode x -> b instanceof LookupSwitchInsnNode y && x.keys.equals(y.keys)
+                    && listA.indexOf(x.dflt) == listB.indexOf(y.dflt) && sameLabels(listA, x.labels, listB, y.labels);
+            case MultiANewArrayInsnNode x -> b instanceof MultiANewArrayInsnNode y && x.desc.equals(y.desc) && x.dims == y.dims;
+            default -> false;
+        };
+    }
+    
+    private static boolean sameLabels(InsnList listA, List<LabelNode> labelsA, InsnList listB, List<LabelNode> labelsB) {
+        if (labelsA.size() != labelsB.size()) return false;
+        for (int i = 0; i < labelsA.size(); i++) {
+            if (listA.indexOf(labelsA.get(i)) != listB.indexOf(labelsB.get(i))) return false;
+        }
+        return true;
+    }
 }
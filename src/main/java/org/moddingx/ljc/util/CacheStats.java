@@ -0,0 +1,14 @@
+package org.moddingx.ljc.util;
+
+// Lookup statistics of an in-memory cache. size is the number of cached entries, bytes their estimated heap size.
+public record CacheStats(long hits, long misses, long evictions, int size, long bytes) {
+
+    public double hitRate() {
+        return this.hits + this.misses == 0 ? 0 : this.hits / (double) (this.hits + this.misses);
+    }
+
+    @Override
+    public String toString() {
+        return this.size + " entries (" + (this.bytes / (1024 * 1024)) + "MB), " + this.hits + " hits, " + this.misses + " misses (" + Math.round(this.hitRate() * 100) + "% hit rate), " + this.evictions + " evictions";
+    }
+}
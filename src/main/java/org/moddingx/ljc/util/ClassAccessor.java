@@ -1,7 +1,6 @@
 package org.moddingx.ljc.util;
 
 import jakarta.annotation.Nullable;
-import org.objectweb.asm.tree.ClassNode;
 
 import java.io.IOException;
 
@@ -9,13 +8,13 @@ import java.io.IOException;
 public interface ClassAccessor {
     
     @Nullable
-    ClassNode get(String cls) throws IOException;
+    ClassHeader get(String cls) throws IOException;
     
     static ClassAccessor of(ClassAccessor... accessors) {
         return cls -> {
             for (ClassAccessor accessor : accessors) {
-                ClassNode node = accessor.get(cls);
-                if (node != null) return node;
+                ClassHeader header = accessor.get(cls);
+                if (header != null) return header;
             }
             return null;
         };
@@ -0,0 +1,134 @@
+package org.moddingx.ljc.util;
+
+import jakarta.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+// Loaded classes by name, shared by multiple threads. Looking up a class that was already loaded does not lock.
+// Each class is loaded at most once while it is cached, other threads that request it at the same time wait for it.
+// When the estimated size of all cached classes exceeds maxSize, classes that were not used recently are evicted
+// using the CLOCK algorithm: every lookup marks a class as used, eviction clears the mark and evicts classes that were
+// not used since the last time eviction looked at them. Classes that don't exist are cached as well.
+public class ClassCache<T> {
+
+    // Rough size of the cache entry, the key and an empty value.
+    private static final long ENTRY_SIZE = 96;
+
+    private final long maxSize;
+    private final ToLongFunction<T> sizeEstimate;
+    private final ConcurrentMap<String, Node<T>> classes;
+    // Order in which eviction looks at the cached classes.
+    private final Queue<String> clock;
+    private final AtomicLong size;
+    private final LongAdder requests;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    // sizeEstimate is the number of bytes, a value holds on the heap.
+    public ClassCache(long maxSize, ToLongFunction<T> sizeEstimate) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.sizeEstimate = sizeEstimate;
+        this.classes = new ConcurrentHashMap<>();
+        this.clock = new ConcurrentLinkedQueue<>();
+        this.size = new AtomicLong(0);
+        this.requests = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    // loader is only called, if the class is not cached.
+    @Nullable
+    public T get(String cls, Loader<T> loader) throws IOException {
+        this.requests.increment();
+        Node<T> node = this.classes.get(cls);
+        if (node != null) {
+            // Only write when needed, so frequently used classes don't cause contention.
+            if (!node.used) node.used = true;
+            return node.value;
+        }
+        Node<T> loaded;
+        try {
+            loaded = this.classes.computeIfAbsent(cls, key -> {
+                this.misses.increment();
+                try {
+                    T value = loader.load(key);
+                    return new Node<>(value, ENTRY_SIZE + 2L * key.length() + (value == null ? 0 : this.sizeEstimate.applyAsLong(value)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (!loaded.added) {
+            // Only one thread adds the class to the clock.
+            synchronized (loaded) {
+                if (!loaded.added) {
+                    loaded.added = true;
+                    this.clock.add(cls);
+                    if (this.size.addAndGet(loaded.size) > this.maxSize) {
+                        this.evict();
+                    }
+                }
+            }
+        }
+        return loaded.value;
+    }
+
+    private synchronized void evict() {
+        // Every class is looked at most twice, as the first look clears its mark.
+        long remaining = 2L * this.classes.size();
+        while (this.size.get() > this.maxSize && remaining-- > 0) {
+            String cls = this.clock.poll();
+            if (cls == null) return;
+            Node<T> node = this.classes.get(cls);
+            if (node == null) continue;
+            if (node.used) {
+                node.used = false;
+                this.clock.add(cls);
+            } else if (this.classes.remove(cls, node)) {
+                this.size.addAndGet(-node.size);
+                this.evictions.increment();
+            }
+        }
+    }
+
+    public CacheStats stats() {
+        long misses = this.misses.sum();
+        return new CacheStats(this.requests.sum() - misses, misses, this.evictions.sum(), this.classes.size(), this.size.get());
+    }
+
+    @FunctionalInterface
+    public interface Loader<T> {
+
+        @Nullable
+        T load(String cls) throws IOException;
+    }
+
+    private static class Node<T> {
+
+        @Nullable private final T value;
+        private final long size;
+        private volatile boolean used;
+        // Whether the node was added to the clock and its size to the cache size.
+        private volatile boolean added;
+
+        private Node(@Nullable T value, long size) {
+            this.value = value;
+            this.size = size;
+            this.used = false;
+            this.added = false;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.moddingx.ljc.util;
+
+import jakarta.annotation.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.List;
+
+// The parts of a class needed to compute the class hierarchy. Much smaller than a ClassNode, so it can be kept for
+// every class on a large class path.
+public record ClassHeader(String name, int access, @Nullable String superName, List<String> interfaces) {
+
+    // Only reads the class header, members are not parsed.
+    public static ClassHeader read(ClassReader reader) {
+        return new ClassHeader(reader.getClassName(), reader.getAccess(), reader.getSuperName(), List.of(reader.getInterfaces()));
+    }
+
+    public static ClassHeader of(ClassNode node) {
+        return new ClassHeader(node.name, node.access, node.superName, node.interfaces == null ? List.of() : List.copyOf(node.interfaces));
+    }
+
+    // Rough number of bytes this header holds on the heap.
+    public long estimatedSize() {
+        long size = 64 + stringSize(this.name) + stringSize(this.superName);
+        for (String itf : this.interfaces) {
+            size += 8 + stringSize(itf);
+        }
+        return size;
+    }
+
+    public static long stringSize(@Nullable String str) {
+        return str == null ? 0 : 40 + str.length();
+    }
+}
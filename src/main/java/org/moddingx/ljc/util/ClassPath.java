@@ -1,14 +1,13 @@
 package org.moddingx.ljc.util;
 
 import jakarta.annotation.Nullable;
-import org.moddingx.ljc.LegacyConverter;
+import org.moddingx.ljc.ConversionOptions;
+import org.moddingx.ljc.archive.ArchiveReader;
+import org.moddingx.ljc.cache.ClassPathIndex;
 import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.tree.ClassNode;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -18,78 +17,153 @@ import java.util.Map;
 
 public class ClassPath implements ClassAccessor, Closeable {
     
-    private final List<FileSystem> fileSystems;
-    private final List<Path> scanPaths;
-    private final Map<String, ClassNode> classes;
+    private final List<ArchiveReader> archives;
+    // Looks up classes without caching them.
+    private final ClassAccessor loader;
+    private final ClassCache<ClassHeader> classes;
+    private final FingerprintSource fingerprintSource;
+    @Nullable private String fingerprint;
     
-    public ClassPath(FileSystem fs) {
-        this.fileSystems = List.of(fs);
-        this.scanPaths = List.of(fs.getPath("/"));
-        this.classes = new HashMap<>();
+    // The archive is not closed with the class path.
+    public ClassPath(ArchiveReader archive) {
+        this(archive, ConversionOptions.DEFAULT_CLASS_CACHE_SIZE);
+    }
+    
+    // cacheSize is the maximum size of parsed class data kept in memory in bytes.
+    public ClassPath(ArchiveReader archive, long cacheSize) {
+        this.archives = List.of();
+        this.fingerprintSource = fp -> fp.add(archive.fingerprint());
+        this.loader = reader(archive);
+        this.classes = new ClassCache<>(cacheSize, ClassHeader::estimatedSize);
     }
     
     public ClassPath(List<Path> paths) throws IOException {
-        List<FileSystem> fileSystems = new ArrayList<>();
-        List<Path> scanPaths = new ArrayList<>();
+        this(paths, ConversionOptions.DEFAULT_CLASS_CACHE_SIZE, null);
+    }
+    
+    public ClassPath(List<Path> paths, long cacheSize) throws IOException {
+        this(paths, cacheSize, null);
+    }
+    
+    // Lists every jar and directory once, so looking up a class does not need to probe each of them. Like when
+    // probing, classes from earlier paths win. If an index is given, jars are looked up in a combined index of all jars
+    // on the class path instead and are only read when they changed.
+    public ClassPath(List<Path> paths, long cacheSize, @Nullable ClassPathIndex index) throws IOException {
+        List<Path> fingerprintPaths = List.copyOf(paths);
+        this.fingerprintSource = fp -> addFiles(fp, fingerprintPaths);
+        List<ArchiveReader> archives = new ArrayList<>();
+        Map<String, Location> listed = new HashMap<>();
+        List<Path> indexedJars = new ArrayList<>();
+        List<String> indexedPrefixes = new ArrayList<>();
+        List<Integer> indexedOrder = new ArrayList<>();
+        ClassPathIndex.Jars jars = null;
         
-        for (Path p : paths) {
-            Path path = p.toAbsolutePath().normalize();
-            if (Files.isDirectory(path)) {
-                scanPaths.add(path);
-            } else if (Files.isRegularFile(path)) {
-                FileSystem fs = LegacyConverter.jarFS(path);
-                if (path.getFileName().toString().endsWith(".jmod")) {
-                    Path basePath = fs.getPath("/classes");
-                    if (Files.isDirectory(basePath)) {
-                        fileSystems.add(fs);
-                        scanPaths.add(basePath);
-                    } else {
-                        fs.close();
+        try {
+            for (int i = 0; i < paths.size(); i++) {
+                Path path = paths.get(i).toAbsolutePath().normalize();
+                if (!Files.isDirectory(path) && !Files.isRegularFile(path)) continue;
+                String prefix = Files.isRegularFile(path) && path.getFileName().toString().endsWith(".jmod") ? "classes/" : "";
+                if (index != null && Files.isRegularFile(path)) {
+                    indexedJars.add(path);
+                    indexedPrefixes.add(prefix);
+                    indexedOrder.add(i);
+                    continue;
+                }
+                ArchiveReader archive = ArchiveReader.open(path);
+                archives.add(archive);
+                for (ArchiveReader.Entry entry : archive.entries()) {
+                    String name = entry.name();
+                    if (name.startsWith(prefix) && name.endsWith(".class")) {
+                        listed.putIfAbsent(name.substring(prefix.length(), name.length() - 6), new Location(i, archive, entry));
                     }
-                } else {
-                    fileSystems.add(fs);
-                    scanPaths.add(fs.getPath("/"));
                 }
             }
+            if (index != null && !indexedJars.isEmpty()) {
+                jars = index.open(indexedJars, indexedPrefixes);
+            }
+        } catch (IOException | RuntimeException e) {
+            for (ArchiveReader archive : archives) {
+                try {
+                    archive.close();
+                } catch (IOException x) {
+                    e.addSuppressed(x);
+                }
+            }
+            throw e;
         }
         
-        this.fileSystems = List.copyOf(fileSystems);
-        this.scanPaths = List.copyOf(scanPaths);
-        this.classes = new HashMap<>();
+        this.archives = List.copyOf(archives);
+        this.loader = jars == null ? listed(listed) : indexed(jars, indexedOrder.stream().mapToInt(Integer::intValue).toArray(), listed);
+        this.classes = new ClassCache<>(cacheSize, ClassHeader::estimatedSize);
     }
-
-    @Nullable
-    public ClassNode get(String cls) throws IOException {
-        if (!this.classes.containsKey(cls)) {
-            Path found = null;
-            for (Path scan : this.scanPaths) {
-                Path test = scan.resolve(cls + ".class");
-                if (Files.isRegularFile(test)) {
-                    found = test;
-                    break;
-                }
-            }
-            if (found != null) {
-                try (InputStream in = Files.newInputStream(found)) {
-                    ClassReader cr = new ClassReader(in);
-                    ClassNode node = new ClassNode();
-                    cr.accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG);
-                    this.classes.put(cls, node);
-                }
-            } else {
-                this.classes.put(cls, null);
+    
+    private static ClassAccessor listed(Map<String, Location> listed) {
+        return cls -> {
+            Location location = listed.get(cls);
+            return location == null ? null : location.read();
+        };
+    }
+    
+    // order holds the position on the class path for each indexed jar.
+    private static ClassAccessor indexed(ClassPathIndex.Jars jars, int[] order, Map<String, Location> listed) {
+        if (listed.isEmpty()) return jars;
+        return cls -> {
+            int position = jars.find(cls);
+            Location location = listed.get(cls);
+            if (position >= 0 && (location == null || order[jars.jar(position)] < location.order())) {
+                return jars.get(position);
             }
+            return location == null ? null : location.read();
+        };
+    }
+    
+    private static ClassAccessor reader(ArchiveReader archive) {
+        return cls -> {
+            ArchiveReader.Entry entry = archive.get(cls + ".class");
+            return entry == null ? null : ClassHeader.read(new ClassReader(archive.read(entry)));
+        };
+    }
+    
+    @Nullable
+    @Override
+    public ClassHeader get(String cls) throws IOException {
+        return this.classes.get(cls, this.loader::get);
+    }
+    
+    // Identifies the classes on this class path. Changes, if any class is added, removed or modified.
+    public synchronized String fingerprint() throws IOException {
+        if (this.fingerprint == null) {
+            Fingerprint fp = new Fingerprint();
+            this.fingerprintSource.addTo(fp);
+            this.fingerprint = fp.toString();
+        }
+        return this.fingerprint;
+    }
+    
+    // The fingerprint a class path created from the given paths would have.
+    public static String fingerprint(List<Path> paths) throws IOException {
+        Fingerprint fp = new Fingerprint();
+        addFiles(fp, paths);
+        return fp.toString();
+    }
+    
+    private static void addFiles(Fingerprint fp, List<Path> paths) throws IOException {
+        for (Path path : paths) {
+            fp.addFile(path);
         }
-        return this.classes.get(cls);
+    }
+    
+    public CacheStats stats() {
+        return this.classes.stats();
     }
     
     @Override
     public void close() throws IOException {
         IOException ex = new IOException("Failed to close class path.");
         boolean failure = false;
-        for (FileSystem fs : this.fileSystems) {
+        for (ArchiveReader archive : this.archives) {
             try {
-                fs.close();
+                archive.close();
             } catch (Exception e) {
                 ex.addSuppressed(e);
                 failure = true;
@@ -99,4 +173,18 @@ public class ClassPath implements ClassAccessor, Closeable {
             throw ex;
         }
     }
+    
+    // Where the header of a listed class is read from. order is the position of the archive on the class path.
+    private record Location(int order, ArchiveReader archive, ArchiveReader.Entry entry) {
+        
+        public ClassHeader read() throws IOException {
+            return ClassHeader.read(new ClassReader(this.archive.read(this.entry)));
+        }
+    }
+    
+    @FunctionalInterface
+    private interface FingerprintSource {
+        
+        void addTo(Fingerprint fp) throws IOException;
+    }
 }
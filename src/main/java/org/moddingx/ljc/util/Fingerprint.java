@@ -0,0 +1,82 @@
+package org.moddingx.ljc.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Builds a hash over values that identify some input, so it can be detected whether the input has changed.
+public class Fingerprint {
+
+    private final MessageDigest digest;
+
+    public Fingerprint() {
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public Fingerprint add(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        this.add(bytes.length);
+        this.digest.update(bytes);
+        return this;
+    }
+
+    public Fingerprint add(long value) {
+        for (int i = 56; i >= 0; i -= 8) {
+            this.digest.update((byte) (value >>> i));
+        }
+        return this;
+    }
+
+    public Fingerprint add(byte[] value) {
+        this.add(value.length);
+        this.digest.update(value);
+        return this;
+    }
+
+    // Adds path, size and modification time of a file. Directories are added with all files they contain.
+    public Fingerprint addFile(Path path) throws IOException {
+        this.add(path.toAbsolutePath().normalize().toString());
+        if (Files.isDirectory(path)) {
+            List<Path> files;
+            try (Stream<Path> paths = Files.walk(path)) {
+                files = paths.filter(Files::isRegularFile).sorted().toList();
+            }
+            this.add(files.size());
+            for (Path file : files) {
+                this.addFileAttributes(path.relativize(file).toString(), file);
+            }
+        } else if (Files.exists(path)) {
+            this.addFileAttributes("", path);
+        } else {
+            this.add(-1);
+        }
+        return this;
+    }
+
+    private void addFileAttributes(String name, Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        this.add(name);
+        this.add(attributes.size());
+        this.add(attributes.lastModifiedTime().toMillis());
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return HexFormat.of().formatHex(((MessageDigest) this.digest.clone()).digest());
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("Can't compute fingerprint", e);
+        }
+    }
+}
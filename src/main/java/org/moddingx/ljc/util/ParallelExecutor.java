@@ -0,0 +1,58 @@
+package org.moddingx.ljc.util;
+
+import jakarta.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.*;
+
+// Runs tasks on a work-stealing pool. With a single thread, tasks run directly on the submitting thread.
+public class ParallelExecutor implements Closeable {
+
+    @Nullable
+    private final ExecutorService executor;
+
+    public ParallelExecutor(int threads) {
+        this.executor = threads > 1 ? Executors.newWorkStealingPool(threads) : null;
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+        if (this.executor == null) {
+            try {
+                return CompletableFuture.completedFuture(task.call());
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        } else {
+            return this.executor.submit(task);
+        }
+    }
+
+    public static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for task.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException x) {
+                throw x;
+            } else if (cause instanceof RuntimeException x) {
+                throw x;
+            } else if (cause instanceof Error x) {
+                throw x;
+            } else {
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+}
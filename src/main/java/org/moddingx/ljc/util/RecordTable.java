@@ -0,0 +1,164 @@
+package org.moddingx.ljc.util;
+
+import jakarta.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+// A hash table from strings to records, stored in a byte buffer. Tables are written once and can be used directly
+// from a memory-mapped file, only the records that are looked up are decoded. The table starts with the number of slots,
+// a power of two, followed by the slots and the records. Each slot holds the hash code of a key and the offset of its
+// record in the buffer, offset 0 marks an empty slot. Each record starts with its key.
+// A corrupt table causes lookups to throw IndexOutOfBoundsException, BufferUnderflowException or IllegalArgumentException.
+public class RecordTable {
+
+    private final ByteBuffer data;
+    private final int offset;
+    private final int slots;
+
+    // offset is the position of the table in the buffer.
+    public RecordTable(ByteBuffer data, int offset) throws IOException {
+        if (offset < 0 || offset + 4L > data.limit()) {
+            throw new IOException("Truncated record table");
+        }
+        this.data = data;
+        this.offset = offset + 4;
+        this.slots = data.getInt(offset);
+        if (Integer.bitCount(this.slots) != 1 || this.offset + 8L * this.slots > data.limit()) {
+            throw new IOException("Invalid record table");
+        }
+    }
+
+    // The record of the key, positioned after the key, or null if the key is not in the table.
+    @Nullable
+    public ByteBuffer get(String key) {
+        int pos = this.find(key);
+        if (pos < 0) return null;
+        // Each lookup uses its own buffer position, so lookups may happen concurrently.
+        return this.data.duplicate().position(pos);
+    }
+
+    // The position of the record data after the key, or -1 if the key is not in the table. Does not allocate, so
+    // it is cheaper than get, if only a few values of the record are needed. They can be read from the buffer at the
+    // returned position.
+    public int find(String key) {
+        return this.find(key, 0, key.length());
+    }
+
+    // Like find, but the key is the part of a string from start to end. Does not copy the key.
+    public int find(String key, int start, int end) {
+        // Same as the hash code of the substring
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + key.charAt(i);
+        }
+        for (int slot = hash & (this.slots - 1); ; slot = (slot + 1) & (this.slots - 1)) {
+            int pos = this.offset + 8 * slot;
+            int record = this.data.getInt(pos + 4);
+            if (record == 0) return -1;
+            if (this.data.getInt(pos) == hash && this.keyEquals(record, key, start, end)) {
+                return record + 4 + this.data.getInt(record);
+            }
+        }
+    }
+
+    // Calls action with the key and the position of the record data after the key for each record in the table.
+    public void forEach(ObjIntConsumer<String> action) {
+        for (int slot = 0; slot < this.slots; slot++) {
+            int record = this.data.getInt(this.offset + 8 * slot + 4);
+            if (record == 0) continue;
+            byte[] key = new byte[this.data.getInt(record)];
+            this.data.get(record + 4, key);
+            action.accept(new String(key, StandardCharsets.UTF_8), record + 4 + key.length);
+        }
+    }
+
+    // The buffer, the table is stored in. Must not be modified.
+    public ByteBuffer data() {
+        return this.data;
+    }
+
+    // Compares ascii keys without decoding the stored key.
+    private boolean keyEquals(int record, String key, int start, int end) {
+        int length = this.data.getInt(record);
+        if (length < end - start) return false;
+        for (int i = start; i < end; i++) {
+            char chr = key.charAt(i);
+            if (chr >= 0x80) {
+                byte[] bytes = new byte[length];
+                this.data.get(record + 4, bytes);
+                return key.substring(start, end).equals(new String(bytes, StandardCharsets.UTF_8));
+            }
+            if (this.data.get(record + 4 + i - start) != chr) return false;
+        }
+        return length == end - start;
+    }
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(ByteBuffer data) {
+        byte[] bytes = new byte[data.getInt()];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Collects records in memory until the table is written. Keys must be unique.
+    public static class Writer {
+
+        private final ByteArrayOutputStream records;
+        private final DataOutputStream out;
+        private final List<String> keys;
+        private final List<Integer> positions;
+
+        public Writer() {
+            this.records = new ByteArrayOutputStream();
+            this.out = new DataOutputStream(this.records);
+            this.keys = new ArrayList<>();
+            this.positions = new ArrayList<>();
+        }
+
+        // Starts a new record. Its data is written to the returned stream, until the next record is started.
+        public DataOutputStream add(String key) throws IOException {
+            this.keys.add(key);
+            this.positions.add(this.out.size());
+            writeString(this.out, key);
+            return this.out;
+        }
+
+        // offset is the position of the table in the buffer, it will be read from.
+        public void writeTo(DataOutput target, int offset) throws IOException {
+            int slots = Integer.highestOneBit(Math.max(1, this.keys.size()) * 2 - 1) * 2;
+            long recordsStart = offset + 4 + 8L * slots;
+            if (recordsStart + this.out.size() > Integer.MAX_VALUE) {
+                throw new IOException("Record table too large");
+            }
+            int[] table = new int[2 * slots];
+            for (int i = 0; i < this.keys.size(); i++) {
+                int hash = this.keys.get(i).hashCode();
+                int slot = hash & (slots - 1);
+                while (table[2 * slot + 1] != 0) {
+                    slot = (slot + 1) & (slots - 1);
+                }
+                table[2 * slot] = hash;
+                table[2 * slot + 1] = (int) recordsStart + this.positions.get(i);
+            }
+            target.writeInt(slots);
+            for (int value : table) {
+                target.writeInt(value);
+            }
+            this.out.flush();
+            target.write(this.records.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package org.moddingx.ljc.zip;
+
+import jakarta.annotation.Nullable;
+import org.moddingx.ljc.archive.ArchiveReader;
+import org.moddingx.ljc.util.Fingerprint;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Reads a zip file by parsing its central directory once. The file is memory-mapped and entry data is read from
+// slices of the mapping without changing any shared state, so a reader can be used from multiple threads at once.
+public class ZipReader implements ArchiveReader {
+
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int CENTRAL_SIG = 0x02014b50;
+    private static final int LOCAL_SIG = 0x04034b50;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int CENTRAL_SIZE = 46;
+    private static final int LOCAL_SIZE = 30;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long size;
+    // The whole file, if it is small enough to be mapped at once. Otherwise, each read maps the region it needs.
+    @Nullable private final ByteBuffer data;
+    // Offset of the zip data inside the file. Non-zero for files with a prefix like jmods.
+    private final long base;
+    private final List<Entry> entries;
+    private final Map<String, Entry> entryMap;
+    @Nullable private String fingerprint;
+
+    public ZipReader(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.size = this.channel.size();
+            this.data = this.size <= Integer.MAX_VALUE ? this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.size) : null;
+            long endPos = this.findEnd();
+            ByteBuffer end = this.read(endPos, END_SIZE);
+            long count = Short.toUnsignedLong(end.getShort(10));
+            long cenSize = Integer.toUnsignedLong(end.getInt(12));
+            long cenOffset = Integer.toUnsignedLong(end.getInt(16));
+            long cenEnd = endPos;
+            if ((count == 0xFFFF || cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL) && endPos >= ZIP64_LOCATOR_SIZE) {
+                ByteBuffer locator = this.read(endPos - ZIP64_LOCATOR_SIZE, ZIP64_LOCATOR_SIZE);
+                if (locator.getInt(0) == ZIP64_LOCATOR_SIG) {
+                    // The zip64 end record directly precedes the locator, its stored offset may not account for a prefix.
+                    long zip64EndPos = endPos - ZIP64_LOCATOR_SIZE - 56;
+                    ByteBuffer zip64End = this.read(zip64EndPos, 56);
+                    if (zip64End.getInt(0) != ZIP64_END_SIG) {
+                        throw new IOException("Invalid zip64 end of central directory: " + path);
+                    }
+                    count = zip64End.getLong(32);
+                    cenSize = zip64End.getLong(40);
+                    cenOffset = zip64End.getLong(48);
+                    cenEnd = zip64EndPos;
+                }
+            }
+            if (cenSize > Integer.MAX_VALUE || cenEnd - cenSize < 0) {
+                throw new IOException("Invalid central directory: " + path);
+            }
+            this.base = cenEnd - cenSize - cenOffset;
+
+            ByteBuffer cen = this.read(cenEnd - cenSize, (int) cenSize);
+            List<Entry> entries = new ArrayList<>();
+            Map<String, Entry> entryMap = new HashMap<>();
+            int pos = 0;
+            for (long i = 0; i < count; i++) {
+                Entry entry = this.readCentral(cen, pos);
+                pos += CENTRAL_SIZE + Short.toUnsignedInt(cen.getShort(pos + 28)) + Short.toUnsignedInt(cen.getShort(pos + 30)) + Short.toUnsignedInt(cen.getShort(pos + 32));
+                if (!entryMap.containsKey(entry.name())) {
+                    entries.add(entry);
+                    entryMap.put(entry.name(), entry);
+                }
+            }
+            this.entries = Collections.unmodifiableList(entries);
+            this.entryMap = Collections.unmodifiableMap(entryMap);
+        } catch (IOException | RuntimeException e) {
+            try {
+                this.channel.close();
+            } catch (IOException x) {
+                e.addSuppressed(x);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Path path() {
+        return this.path;
+    }
+
+    // All entries in central directory order.
+    @Override
+    public List<Entry> entries() {
+        return this.entries;
+    }
+
+    @Nullable
+    @Override
+    public Entry get(String name) {
+        return this.entryMap.get(name);
+    }
+
+    @Override
+    public InputStream open(ArchiveReader.Entry archiveEntry) throws IOException {
+        Entry entry = this.entry(archiveEntry);
+        InputStream raw = new BufferInputStream(this.raw(entry));
+        return switch (entry.method()) {
+            case Entry.STORED -> raw;
+            case Entry.DEFLATED -> new InflaterInputStream(raw, new Inflater(true)) {
+
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    this.inf.end();
+                }
+            };
+            default -> throw new IOException("Unsupported compression method in " + this.path + ": " + entry.name());
+        };
+    }
+
+    // The entry data as stored in the zip file, without decompressing it.
+    public ByteBuffer raw(Entry entry) throws IOException {
+        if (entry.size() > Integer.MAX_VALUE - 8 || entry.compressedSize() > Integer.MAX_VALUE - 8) {
+            throw new IOException("Zip entry too large in " + this.path + ": " + entry.name());
+        }
+        return this.read(this.dataOffset(entry), (int) entry.compressedSize()).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    // Stored entries are not copied, the buffer is a read-only view of the zip file.
+    @Override
+    public ByteBuffer buffer(ArchiveReader.Entry archiveEntry) throws IOException {
+        Entry entry = this.entry(archiveEntry);
+        return entry.method() == Entry.STORED ? this.raw(entry) : ByteBuffer.wrap(this.read(entry));
+    }
+
+    @Override
+    public byte[] read(ArchiveReader.Entry archiveEntry) throws IOException {
+        Entry entry = this.entry(archiveEntry);
+        ByteBuffer compressed = this.raw(entry);
+        switch (entry.method()) {
+            case Entry.STORED -> {
+                byte[] data = new byte[compressed.remaining()];
+                compressed.get(data);
+                return data;
+            }
+            case Entry.DEFLATED -> {
+                Inflater inflater = new Inflater(true);
+                try {
+                    inflater.setInput(compressed);
+                    byte[] data = new byte[(int) entry.size()];
+                    int off = 0;
+                    while (off < data.length) {
+                        int n = inflater.inflate(data, off, data.length - off);
+                        if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                            throw new EOFException("Truncated zip entry in " + this.path + ": " + entry.name());
+                        }
+                        off += n;
+                    }
+                    return data;
+                } catch (DataFormatException e) {
+                    throw new IOException("Invalid zip entry in " + this.path + ": " + entry.name(), e);
+                } finally {
+                    inflater.end();
+                }
+            }
+            default -> throw new IOException("Unsupported compression method in " + this.path + ": " + entry.name());
+        }
+    }
+
+    @Override
+    public synchronized String fingerprint() {
+        if (this.fingerprint == null) {
+            Fingerprint fp = new Fingerprint();
+            for (Entry entry : this.entries) {
+                if (entry.name().endsWith(".class")) {
+                    fp.add(entry.name()).add(entry.crc()).add(entry.size());
+                }
+            }
+            this.fingerprint = fp.toString();
+        }
+        return this.fingerprint;
+    }
+
+    private Entry entry(ArchiveReader.Entry entry) throws IOException {
+        if (entry instanceof Entry e) {
+            return e;
+        } else {
+            throw new IOException("Entry " + entry.name() + " does not belong to " + this.path);
+        }
+    }
+
+    private long dataOffset(Entry entry) throws IOException {
+        long localPos = this.base + entry.localOffset();
+        ByteBuffer local = this.read(localPos, LOCAL_SIZE);
+        if (local.getInt(0) != LOCAL_SIG) {
+            throw new IOException("Invalid local header in " + this.path + ": " + entry.name());
+        }
+        return localPos + LOCAL_SIZE + Short.toUnsignedInt(local.getShort(26)) + Short.toUnsignedInt(local.getShort(28));
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    private long findEnd() throws IOException {
+        // The end record is followed by a comment of at most 65535 bytes.
+        int searchSize = (int) Math.min(this.size, END_SIZE + 0xFFFF);
+        ByteBuffer tail = this.read(this.size - searchSize, searchSize);
+        for (int pos = searchSize - END_SIZE; pos >= 0; pos--) {
+            if (tail.getInt(pos) == END_SIG && pos + END_SIZE + Short.toUnsignedInt(tail.getShort(pos + 20)) == searchSize) {
+                return this.size - searchSize + pos;
+            }
+        }
+        throw new IOException("Not a zip file: " + this.path);
+    }
+
+    private Entry readCentral(ByteBuffer cen, int pos) throws IOException {
+        if (pos + CENTRAL_SIZE > cen.limit() || cen.getInt(pos) != CENTRAL_SIG) {
+            throw new IOException("Invalid central directory: " + this.path);
+        }
+        int flags = Short.toUnsignedInt(cen.getShort(pos + 8));
+        int method = Short.toUnsignedInt(cen.getShort(pos + 10));
+        int dosTime = cen.getInt(pos + 12);
+        long crc = Integer.toUnsignedLong(cen.getInt(pos + 16));
+        long compressedSize = Integer.toUnsignedLong(cen.getInt(pos + 20));
+        long size = Integer.toUnsignedLong(cen.getInt(pos + 24));
+        int nameLen = Short.toUnsignedInt(cen.getShort(pos + 28));
+        int extraLen = Short.toUnsignedInt(cen.getShort(pos + 30));
+        long localOffset = Integer.toUnsignedLong(cen.getInt(pos + 42));
+        if ((flags & 1) != 0) {
+            throw new IOException("Encrypted zip entries are not supported: " + this.path);
+        }
+        byte[] nameBytes = new byte[nameLen];
+        cen.get(pos + CENTRAL_SIZE, nameBytes);
+        String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+        // Values that don't fit into the central header are stored in the zip64 extra field in a fixed order.
+        int extraPos = pos + CENTRAL_SIZE + nameLen;
+        int extraEnd = extraPos + extraLen;
+        while (extraPos + 4 <= extraEnd) {
+            int tag = Short.toUnsignedInt(cen.getShort(extraPos));
+            int len = Short.toUnsignedInt(cen.getShort(extraPos + 2));
+            if (tag == 0x0001) {
+                int valuePos = extraPos + 4;
+                if (size == 0xFFFFFFFFL && valuePos + 8 <= extraEnd) {
+                    size = cen.getLong(valuePos);
+                    valuePos += 8;
+                }
+                if (compressedSize == 0xFFFFFFFFL && valuePos + 8 <= extraEnd) {
+                    compressedSize = cen.getLong(valuePos);
+                    valuePos += 8;
+                }
+                if (localOffset == 0xFFFFFFFFL && valuePos + 8 <= extraEnd) {
+                    localOffset = cen.getLong(valuePos);
+                }
+            }
+            extraPos += 4 + len;
+        }
+        return new Entry(name, method, dosTime, crc, compressedSize, size, localOffset);
+    }
+
+    // A little endian view of a region of the file.
+    private ByteBuffer read(long pos, int len) throws IOException {
+        if (pos < 0 || pos + len > this.size) {
+            throw new EOFException("Unexpected end of zip file: " + this.path);
+        }
+        ByteBuffer buffer = this.data != null ? this.data.slice((int) pos, len) : this.channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static class BufferInputStream extends InputStream {
+
+        private final ByteBuffer data;
+
+        private BufferInputStream(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return this.data.hasRemaining() ? Byte.toUnsignedInt(this.data.get()) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!this.data.hasRemaining()) return -1;
+            int n = Math.min(len, this.data.remaining());
+            this.data.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return this.data.remaining();
+        }
+    }
+
+    // dosTime holds the MS-DOS date in the upper and the time in the lower 16 bits.
+    public record Entry(String name, int method, int dosTime, long crc, long compressedSize, long size, long localOffset) implements ArchiveReader.Entry {
+
+        public static final int STORED = 0;
+        public static final int DEFLATED = 8;
+    }
+}
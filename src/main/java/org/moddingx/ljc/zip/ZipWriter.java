@@ -0,0 +1,236 @@
+package org.moddingx.ljc.zip;
+
+import org.moddingx.ljc.archive.ArchiveReader;
+import org.moddingx.ljc.archive.ArchiveWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Writes a zip file entry by entry. Entry data goes straight to the file, only the central directory is kept in memory.
+// Not thread-safe.
+public class ZipWriter implements ArchiveWriter {
+
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int CENTRAL_SIG = 0x02014b50;
+    private static final int LOCAL_SIG = 0x04034b50;
+    private static final int UTF8_FLAG = 0x0800;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private final OutputStream out;
+    private final Deflater deflater;
+    private final List<CentralEntry> written;
+    private final Set<String> names;
+    private long position;
+    private byte[] buffer;
+
+    public ZipWriter(Path path) throws IOException {
+        this.out = new BufferedOutputStream(Files.newOutputStream(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), 1 << 16);
+        this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        this.written = new ArrayList<>();
+        this.names = new HashSet<>();
+        this.position = 0;
+        this.buffer = new byte[8192];
+    }
+
+    @Override
+    public void writeDirectory(String name, int dosTime) throws IOException {
+        this.writeEntry(name.endsWith("/") ? name : name + "/", ZipReader.Entry.STORED, dosTime, 0, 0, 0, new byte[0], 0);
+    }
+
+    @Override
+    public void write(String name, byte[] data, int dosTime) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        this.deflater.reset();
+        this.deflater.setInput(data);
+        this.deflater.finish();
+        int len = 0;
+        while (!this.deflater.finished()) {
+            if (len == this.buffer.length) {
+                byte[] newBuffer = new byte[this.buffer.length * 2];
+                System.arraycopy(this.buffer, 0, newBuffer, 0, len);
+                this.buffer = newBuffer;
+            }
+            len += this.deflater.deflate(this.buffer, len, this.buffer.length - len);
+        }
+        if (len < data.length) {
+            this.writeEntry(name, ZipReader.Entry.DEFLATED, dosTime, crc.getValue(), len, data.length, this.buffer, len);
+        } else {
+            this.writeEntry(name, ZipReader.Entry.STORED, dosTime, crc.getValue(), data.length, data.length, data, data.length);
+        }
+    }
+
+    // Entries from another zip file are copied without decompressing and recompressing their data.
+    @Override
+    public void copy(ArchiveReader reader, ArchiveReader.Entry archiveEntry, String name) throws IOException {
+        if (!(reader instanceof ZipReader zip) || !(archiveEntry instanceof ZipReader.Entry entry)) {
+            if (archiveEntry.isDirectory()) {
+                this.writeDirectory(name, archiveEntry.dosTime());
+            } else {
+                this.write(name, reader.read(archiveEntry), archiveEntry.dosTime());
+            }
+            return;
+        }
+        this.writeLocalHeader(name, entry.method(), entry.dosTime(), entry.crc(), entry.compressedSize(), entry.size());
+        ByteBuffer data = zip.raw(entry);
+        while (data.hasRemaining()) {
+            int len = Math.min(data.remaining(), this.buffer.length);
+            data.get(this.buffer, 0, len);
+            this.writeBytes(this.buffer, len);
+        }
+    }
+
+    private void writeEntry(String name, int method, int dosTime, long crc, long compressedSize, long size, byte[] data, int dataLen) throws IOException {
+        this.writeLocalHeader(name, method, dosTime, crc, compressedSize, size);
+        this.writeBytes(data, dataLen);
+    }
+
+    private void writeLocalHeader(String name, int method, int dosTime, long crc, long compressedSize, long size) throws IOException {
+        byte[] nameBytes = this.startEntry(name);
+        long offset = this.position;
+        boolean zip64 = compressedSize >= ZIP64_MAGIC || size >= ZIP64_MAGIC;
+        ByteBuffer local = ByteBuffer.allocate(30 + nameBytes.length + (zip64 ? 20 : 0)).order(ByteOrder.LITTLE_ENDIAN);
+        local.putInt(LOCAL_SIG);
+        local.putShort((short) (zip64 ? 45 : 20));
+        local.putShort((short) UTF8_FLAG);
+        local.putShort((short) method);
+        local.putInt(dosTime);
+        local.putInt((int) crc);
+        local.putInt((int) (zip64 ? ZIP64_MAGIC : compressedSize));
+        local.putInt((int) (zip64 ? ZIP64_MAGIC : size));
+        local.putShort((short) nameBytes.length);
+        local.putShort((short) (zip64 ? 20 : 0));
+        local.put(nameBytes);
+        if (zip64) {
+            local.putShort((short) 0x0001);
+            local.putShort((short) 16);
+            local.putLong(size);
+            local.putLong(compressedSize);
+        }
+        this.writeBytes(local.array(), local.capacity());
+        this.written.add(new CentralEntry(nameBytes, method, dosTime, crc, compressedSize, size, offset));
+    }
+
+    private byte[] startEntry(String name) throws IOException {
+        if (!this.names.add(name)) {
+            throw new IOException("Duplicate zip entry: " + name);
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > 0xFFFF) {
+            throw new IOException("Zip entry name too long: " + name);
+        }
+        return nameBytes;
+    }
+
+    private void writeBytes(byte[] data, int len) throws IOException {
+        this.out.write(data, 0, len);
+        this.position += len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (this.out) {
+            this.deflater.end();
+            long cenOffset = this.position;
+            for (CentralEntry entry : this.written) {
+                this.writeCentral(entry);
+            }
+            long cenSize = this.position - cenOffset;
+            long count = this.written.size();
+            if (count >= 0xFFFF || cenSize >= ZIP64_MAGIC || cenOffset >= ZIP64_MAGIC) {
+                long zip64EndPos = this.position;
+                ByteBuffer zip64End = ByteBuffer.allocate(56 + 20).order(ByteOrder.LITTLE_ENDIAN);
+                zip64End.putInt(ZIP64_END_SIG);
+                zip64End.putLong(44);
+                zip64End.putShort((short) 45);
+                zip64End.putShort((short) 45);
+                zip64End.putInt(0);
+                zip64End.putInt(0);
+                zip64End.putLong(count);
+                zip64End.putLong(count);
+                zip64End.putLong(cenSize);
+                zip64End.putLong(cenOffset);
+                zip64End.putInt(ZIP64_LOCATOR_SIG);
+                zip64End.putInt(0);
+                zip64End.putLong(zip64EndPos);
+                zip64End.putInt(1);
+                this.writeBytes(zip64End.array(), zip64End.capacity());
+            }
+            ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(END_SIG);
+            end.putShort((short) 0);
+            end.putShort((short) 0);
+            end.putShort((short) Math.min(count, 0xFFFF));
+            end.putShort((short) Math.min(count, 0xFFFF));
+            end.putInt((int) Math.min(cenSize, ZIP64_MAGIC));
+            end.putInt((int) Math.min(cenOffset, ZIP64_MAGIC));
+            end.putShort((short) 0);
+            this.writeBytes(end.array(), end.capacity());
+        }
+    }
+
+    private void writeCentral(CentralEntry entry) throws IOException {
+        boolean zip64Sizes = entry.compressedSize() >= ZIP64_MAGIC || entry.size() >= ZIP64_MAGIC;
+        boolean zip64Offset = entry.offset() >= ZIP64_MAGIC;
+        int extraLen = (zip64Sizes ? 16 : 0) + (zip64Offset ? 8 : 0);
+        ByteBuffer cen = ByteBuffer.allocate(46 + entry.name().length + (extraLen == 0 ? 0 : 4 + extraLen)).order(ByteOrder.LITTLE_ENDIAN);
+        cen.putInt(CENTRAL_SIG);
+        cen.putShort((short) (extraLen == 0 ? 20 : 45));
+        cen.putShort((short) (extraLen == 0 ? 20 : 45));
+        cen.putShort((short) UTF8_FLAG);
+        cen.putShort((short) entry.method());
+        cen.putInt(entry.dosTime());
+        cen.putInt((int) entry.crc());
+        cen.putInt((int) (zip64Sizes ? ZIP64_MAGIC : entry.compressedSize()));
+        cen.putInt((int) (zip64Sizes ? ZIP64_MAGIC : entry.size()));
+        cen.putShort((short) entry.name().length);
+        cen.putShort((short) (extraLen == 0 ? 0 : 4 + extraLen));
+        cen.putShort((short) 0);
+        cen.putShort((short) 0);
+        cen.putShort((short) 0);
+        cen.putInt(0);
+        cen.putInt((int) (zip64Offset ? ZIP64_MAGIC : entry.offset()));
+        cen.put(entry.name());
+        if (extraLen != 0) {
+            cen.putShort((short) 0x0001);
+            cen.putShort((short) extraLen);
+            if (zip64Sizes) {
+                cen.putLong(entry.size());
+                cen.putLong(entry.compressedSize());
+            }
+            if (zip64Offset) {
+                cen.putLong(entry.offset());
+            }
+        }
+        this.writeBytes(cen.array(), cen.capacity());
+    }
+
+    public static int dosTime(long time) {
+        LocalDateTime date = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        if (date.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((date.getYear() - 1980) << 25) | (date.getMonthValue() << 21) | (date.getDayOfMonth() << 16)
+                | (date.getHour() << 11) | (date.getMinute() << 5) | (date.getSecond() >> 1);
+    }
+
+    private record CentralEntry(byte[] name, int method, int dosTime, long crc, long compressedSize, long size, long offset) {}
+}
@@ -9,6 +9,7 @@ import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.*;
 import org.gradle.api.tasks.compile.JavaCompile;
 import org.gradle.jvm.toolchain.JavaCompiler;
+import org.moddingx.ljc.ConversionOptions;
 import org.moddingx.ljc.LanguageLevel;
 import org.moddingx.ljc.LegacyConverter;
 import org.moddingx.ljc.Log;
@@ -40,6 +41,8 @@ public abstract class LjcConfigurationTask extends DefaultTask {
         
         this.getOutputDirectory().set(this.getProject().file("build").toPath().resolve(this.getName()).toFile());
         this.getCompiler().convention(compileTask.flatMap(jc -> jc.getJavaCompiler() == null ? this.getProject().provider(() -> null) : jc.getJavaCompiler()));
+        this.getThreads().convention(1);
+        this.getMultiRelease().convention(false);
         this.getLogFile().convention(() -> this.getProject().file("build").toPath().resolve(this.getName()).resolve("ljc.log").toFile());
     }
 
@@ -71,6 +74,22 @@ public abstract class LjcConfigurationTask extends DefaultTask {
     @OutputFile
     public abstract RegularFileProperty getLogFile();
     
+    @Internal
+    public abstract Property<Integer> getThreads();
+    
+    @Internal
+    public abstract DirectoryProperty getCacheDirectory();
+    
+    @Input
+    public abstract Property<Boolean> getMultiRelease();
+    
+    private ConversionOptions conversionOptions() {
+        return ConversionOptions.DEFAULT
+                .withThreads(this.getThreads().get())
+                .withCache(this.getCacheDirectory().isPresent() ? this.getCacheDirectory().get().getAsFile().toPath() : null, ConversionOptions.DEFAULT_CACHE_SIZE)
+                .withMultiRelease(this.getMultiRelease().get());
+    }
+    
     @TaskAction
     public void apply() throws IOException {
         LanguageLevel level = LanguageLevel.of(this.getLanguageLevel().get());
@@ -109,12 +128,15 @@ public abstract class LjcConfigurationTask extends DefaultTask {
         
         try {
             Log.configureLogs(null, System.err, log);
-            for (Path pathToConvert : inputs) {
-                Path dest = outputDir.resolve(pathToConvert.getFileName());
-                Log.info("Converting " + pathToConvert + " to " + dest);
-                int exit = LegacyConverter.run(level, pathToConvert, dest, javaDir, inputs.stream().filter(p -> p != pathToConvert).toList());
-                if (exit != 0) {
-                    throw new IOException("LegacyJavaConverter failed on " + pathToConvert);
+            // All inputs share one converter. The jar being converted takes precedence over its copy on the class path.
+            try (LegacyConverter converter = new LegacyConverter(level, javaDir, inputs, this.conversionOptions())) {
+                for (Path pathToConvert : inputs) {
+                    Path dest = outputDir.resolve(pathToConvert.getFileName());
+                    Log.info("Converting " + pathToConvert + " to " + dest);
+                    int exit = converter.convert(pathToConvert, dest);
+                    if (exit != 0) {
+                        throw new IOException("LegacyJavaConverter failed on " + pathToConvert);
+                    }
                 }
             }
         } finally {
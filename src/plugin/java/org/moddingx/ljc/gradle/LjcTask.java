@@ -2,6 +2,7 @@ package org.moddingx.ljc.gradle;
 
 import jakarta.annotation.Nonnull;
 import org.gradle.api.UnknownTaskException;
+import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.RegularFile;
 import org.gradle.api.file.RegularFileProperty;
@@ -12,6 +13,7 @@ import org.gradle.api.tasks.*;
 import org.gradle.api.tasks.bundling.AbstractArchiveTask;
 import org.gradle.api.tasks.compile.JavaCompile;
 import org.gradle.jvm.toolchain.JavaCompiler;
+import org.moddingx.ljc.ConversionOptions;
 import org.moddingx.ljc.LanguageLevel;
 import org.moddingx.ljc.LegacyConverter;
 import org.moddingx.ljc.Log;
@@ -42,6 +44,8 @@ public abstract class LjcTask extends AbstractArchiveTask {
         
         this.getCompiler().convention(compileTask.flatMap(jc -> jc.getJavaCompiler() == null ? this.getProject().provider(() -> null) : jc.getJavaCompiler()));
         this.getClasspath().convention(compileTask.flatMap(jc -> this.getProject().provider(jc::getClasspath)));
+        this.getThreads().convention(1);
+        this.getMultiRelease().convention(false);
         this.getLogFile().convention(() -> this.getProject().file("build").toPath().resolve(this.getName()).resolve("ljc.log").toFile());
         
         this.getDestinationDirectory().set(this.getProject().file("build").toPath().resolve(this.getName()).toFile());
@@ -70,6 +74,15 @@ public abstract class LjcTask extends AbstractArchiveTask {
     @Optional
     @OutputFile
     public abstract RegularFileProperty getLogFile();
+    
+    @Internal
+    public abstract Property<Integer> getThreads();
+    
+    @Internal
+    public abstract DirectoryProperty getCacheDirectory();
+    
+    @Input
+    public abstract Property<Boolean> getMultiRelease();
 
     @Nonnull
     @Override
@@ -78,6 +91,13 @@ public abstract class LjcTask extends AbstractArchiveTask {
         return copy -> () -> true;
     }
     
+    private ConversionOptions conversionOptions() {
+        return ConversionOptions.DEFAULT
+                .withThreads(this.getThreads().get())
+                .withCache(this.getCacheDirectory().isPresent() ? this.getCacheDirectory().get().getAsFile().toPath() : null, ConversionOptions.DEFAULT_CACHE_SIZE)
+                .withMultiRelease(this.getMultiRelease().get());
+    }
+    
     @TaskAction
     public void apply() throws IOException {
         LanguageLevel level = LanguageLevel.of(this.getLanguageLevel().get());
@@ -120,7 +140,7 @@ public abstract class LjcTask extends AbstractArchiveTask {
         
         try {
             Log.configureLogs(null, System.err, log);
-            int exit = LegacyConverter.run(level, input, output, javaDir, cp);
+            int exit = LegacyConverter.run(level, input, output, javaDir, cp, this.conversionOptions());
             if (exit != 0) {
                 throw new IOException("LegacyJavaConverter failed");
             }
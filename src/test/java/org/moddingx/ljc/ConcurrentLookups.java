@@ -0,0 +1,45 @@
+package org.moddingx.ljc;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Looks up classes from multiple threads at the same time, to test structures shared by conversion threads.
+public class ConcurrentLookups {
+
+    public static final int THREADS = 8;
+
+    // Every thread looks up all classes in a different order. Returns the results of each thread.
+    public static <T> List<Map<String, T>> run(List<String> classes, Lookup<T> lookup) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            // All threads start at the same time, so they actually race for the same classes.
+            CyclicBarrier barrier = new CyclicBarrier(THREADS);
+            List<Future<Map<String, T>>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                List<String> order = new ArrayList<>(classes);
+                Collections.shuffle(order, new Random(t));
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    Map<String, T> result = new HashMap<>();
+                    for (String cls : order) {
+                        result.put(cls, lookup.get(cls));
+                    }
+                    return result;
+                }));
+            }
+            List<Map<String, T>> results = new ArrayList<>();
+            for (Future<Map<String, T>> future : futures) {
+                results.add(future.get(1, TimeUnit.MINUTES));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    public interface Lookup<T> {
+
+        T get(String cls) throws Exception;
+    }
+}
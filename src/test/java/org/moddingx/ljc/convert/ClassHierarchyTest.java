@@ -0,0 +1,121 @@
+package org.moddingx.ljc.convert;
+
+import org.junit.jupiter.api.Test;
+import org.moddingx.ljc.ConcurrentLookups;
+import org.moddingx.ljc.util.ClassCache;
+import org.moddingx.ljc.util.ClassHeader;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FrameNode;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClassHierarchyTest {
+
+    // Class i extends class (i - 1) / 2, so the classes form a binary tree with 10 levels.
+    private static final int CLASSES = 1023;
+    private static final int PAIRS = 500;
+
+    @Test
+    public void concurrentFrameComputation() throws Exception {
+        Map<String, AtomicInteger> loads = new ConcurrentHashMap<>();
+        ClassCache<ClassHeader> cache = new ClassCache<>(Long.MAX_VALUE, ClassHeader::estimatedSize);
+        ClassCache.Loader<ClassHeader> loader = cls -> {
+            loads.computeIfAbsent(cls, k -> new AtomicInteger()).incrementAndGet();
+            if (!cls.startsWith("test/C")) return null;
+            int i = Integer.parseInt(cls.substring(6));
+            return new ClassHeader(cls, Opcodes.ACC_PUBLIC, i == 0 ? "java/lang/Object" : className((i - 1) / 2), List.of());
+        };
+        ClassHierarchy hierarchy = new ClassHierarchy(cls -> cache.get(cls, loader));
+        List<String> errors = new CopyOnWriteArrayList<>();
+
+        // Pairs of different classes on the lowest level, so neither class is a superclass of the other.
+        Random random = new Random(0);
+        Map<String, String> expected = new HashMap<>();
+        while (expected.size() < PAIRS) {
+            int first = 511 + random.nextInt(512);
+            int second = 511 + random.nextInt(512);
+            if (first == second) continue;
+            int common1 = first;
+            int common2 = second;
+            while (common1 != common2) {
+                common1 = (common1 - 1) / 2;
+                common2 = (common2 - 1) / 2;
+            }
+            expected.put(first + "," + second, className(common1));
+        }
+
+        List<Map<String, String>> results = ConcurrentLookups.run(List.copyOf(expected.keySet()), pair -> {
+            String[] types = pair.split(",");
+            return mergedType(hierarchy, className(Integer.parseInt(types[0])), className(Integer.parseInt(types[1])), errors::add);
+        });
+
+        assertEquals(List.of(), errors);
+        for (Map<String, String> result : results) {
+            assertEquals(expected, result);
+        }
+        for (Map.Entry<String, AtomicInteger> entry : loads.entrySet()) {
+            assertEquals(1, entry.getValue().get(), "Loaded " + entry.getKey() + " more than once");
+        }
+        assertTrue(loads.size() <= CLASSES);
+    }
+
+    // Writes a method that stores either type in the same local and returns the type that frame computation assigned to
+    // the local.
+    private static String mergedType(ClassHierarchy hierarchy, String type1, String type2, Consumer<String> errors) {
+        ClassNode node = new ClassNode();
+        node.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "test/Merge", null, "java/lang/Object", null);
+        MethodVisitor mv = node.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "merge", "(Z)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        Label second = new Label();
+        Label end = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitJumpInsn(Opcodes.IFEQ, second);
+        newInstance(mv, type1);
+        mv.visitJumpInsn(Opcodes.GOTO, end);
+        mv.visitLabel(second);
+        newInstance(mv, type2);
+        mv.visitLabel(end);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        node.visitEnd();
+
+        // The method is not part of the original class, so its frames are computed.
+        ClassNode original = new ClassNode();
+        node.accept(original);
+        original.methods.clear();
+        byte[] data = hierarchy.writeClass(original, node, visitor -> visitor, errors);
+
+        ClassNode written = new ClassNode();
+        new ClassReader(data).accept(written, ClassReader.EXPAND_FRAMES);
+        FrameNode frame = null;
+        for (AbstractInsnNode insn : written.methods.getFirst().instructions) {
+            if (insn instanceof FrameNode frameNode) frame = frameNode;
+        }
+        assertNotNull(frame);
+        return (String) frame.local.get(1);
+    }
+
+    private static void newInstance(MethodVisitor mv, String type) {
+        mv.visitTypeInsn(Opcodes.NEW, type);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, type, "<init>", "()V", false);
+        mv.visitVarInsn(Opcodes.ASTORE, 1);
+    }
+
+    private static String className(int i) {
+        return "test/C" + i;
+    }
+}
@@ -0,0 +1,97 @@
+package org.moddingx.ljc.util;
+
+import org.junit.jupiter.api.Test;
+import org.moddingx.ljc.ConcurrentLookups;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClassCacheTest {
+
+    private static final int CLASSES = 2000;
+
+    @Test
+    public void concurrentLookupsLoadEachClassOnce() throws Exception {
+        ClassCache<String> cache = new ClassCache<>(Long.MAX_VALUE, value -> 16);
+        Map<String, AtomicInteger> loads = new ConcurrentHashMap<>();
+        ClassCache.Loader<String> loader = cls -> {
+            loads.computeIfAbsent(cls, k -> new AtomicInteger()).incrementAndGet();
+            // Classes ending in 0 don't exist
+            return cls.endsWith("0") ? null : new String(cls);
+        };
+
+        List<Map<String, Optional<String>>> results = ConcurrentLookups.run(classNames(), cls -> Optional.ofNullable(cache.get(cls, loader)));
+
+        for (String cls : classNames()) {
+            assertEquals(1, loads.get(cls).get(), "Loaded " + cls + " more than once");
+            Optional<String> expected = results.getFirst().get(cls);
+            assertEquals(cls.endsWith("0") ? Optional.empty() : Optional.of(cls), expected);
+            for (Map<String, Optional<String>> result : results) {
+                // Same instance, not only an equal value
+                assertSame(expected.orElse(null), result.get(cls).orElse(null), "Different result for " + cls);
+            }
+        }
+        CacheStats stats = cache.stats();
+        assertEquals(CLASSES, stats.misses());
+        assertEquals((long) ConcurrentLookups.THREADS * CLASSES - CLASSES, stats.hits());
+        assertEquals(0, stats.evictions());
+        assertEquals(CLASSES, stats.size());
+    }
+
+    @Test
+    public void evictionKeepsUsedClasses() throws Exception {
+        // Room for 10 classes
+        ClassCache<String> cache = new ClassCache<>(10 * entrySize(), value -> 16);
+        AtomicInteger hotLoads = new AtomicInteger();
+        for (String cls : classNames()) {
+            // Used between every two evictions, so CLOCK never evicts it.
+            cache.get("test/CHot0", key -> {
+                hotLoads.incrementAndGet();
+                return key;
+            });
+            cache.get(cls, key -> key);
+        }
+        assertEquals(1, hotLoads.get());
+
+        CacheStats stats = cache.stats();
+        assertEquals(CLASSES + 1, stats.misses());
+        assertEquals(stats.misses(), stats.size() + stats.evictions());
+        assertTrue(stats.bytes() <= 10 * entrySize());
+        assertEquals(stats.size() * entrySize(), stats.bytes());
+    }
+
+    @Test
+    public void concurrentEviction() throws Exception {
+        ClassCache<String> cache = new ClassCache<>(100 * entrySize(), value -> 16);
+        // Every class is followed by a lookup of the class ending in 0 next to it, so some lookups hit while others evict.
+        ConcurrentLookups.run(classNames(), cls -> {
+            cache.get(cls, key -> key);
+            return cache.get(cls.substring(0, cls.length() - 1) + "0", key -> key);
+        });
+
+        CacheStats stats = cache.stats();
+        assertEquals((long) ConcurrentLookups.THREADS * CLASSES * 2, stats.hits() + stats.misses());
+        assertTrue(stats.evictions() > 0);
+        // Every loaded class is either still cached or was evicted exactly once.
+        assertEquals(stats.misses(), stats.size() + stats.evictions());
+        assertEquals(stats.size() * entrySize(), stats.bytes());
+    }
+
+    // Size of a cached class with a name of the same length as the test classes.
+    private static long entrySize() throws Exception {
+        ClassCache<String> cache = new ClassCache<>(Long.MAX_VALUE, value -> 16);
+        cache.get(classNames().getFirst(), key -> key);
+        return cache.stats().bytes();
+    }
+
+    private static List<String> classNames() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < CLASSES; i++) {
+            names.add("test/C%04d".formatted(i));
+        }
+        return names;
+    }
+}
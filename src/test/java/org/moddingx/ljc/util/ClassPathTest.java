@@ -0,0 +1,92 @@
+package org.moddingx.ljc.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.moddingx.ljc.ConcurrentLookups;
+import org.moddingx.ljc.cache.ClassPathIndex;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClassPathTest {
+
+    private static final int CLASSES = 1000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void concurrentLookups() throws Exception {
+        Path jar = this.writeJar();
+        try (ClassPath cp = new ClassPath(List.of(jar), 1 << 24, null)) {
+            checkConcurrentLookups(cp);
+        }
+    }
+
+    @Test
+    public void concurrentIndexedLookups() throws Exception {
+        Path jar = this.writeJar();
+        ClassPathIndex index = new ClassPathIndex(this.tempDir.resolve("index"));
+        // The first class path creates the index, the second one reads it.
+        for (int i = 0; i < 2; i++) {
+            try (ClassPath cp = new ClassPath(List.of(jar), 1 << 24, index)) {
+                checkConcurrentLookups(cp);
+            }
+        }
+    }
+
+    private static void checkConcurrentLookups(ClassPath cp) throws Exception {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < CLASSES; i++) {
+            names.add(className(i));
+            names.add("test/Missing" + i);
+        }
+
+        List<Map<String, Optional<ClassHeader>>> results = ConcurrentLookups.run(names, cls -> Optional.ofNullable(cp.get(cls)));
+
+        for (int i = 0; i < CLASSES; i++) {
+            ClassHeader header = results.getFirst().get(className(i)).orElseThrow();
+            assertEquals(className(i), header.name());
+            assertEquals(superName(i), header.superName());
+            assertEquals(List.of("java/lang/Runnable"), header.interfaces());
+        }
+        for (String cls : names) {
+            for (Map<String, Optional<ClassHeader>> result : results) {
+                // Each class is parsed at most once, so all threads get the same instance.
+                assertSame(results.getFirst().get(cls).orElse(null), result.get(cls).orElse(null), "Different result for " + cls);
+            }
+        }
+        assertEquals(names.size(), cp.stats().misses());
+    }
+
+    private Path writeJar() throws IOException {
+        Path jar = this.tempDir.resolve("classes.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (int i = 0; i < CLASSES; i++) {
+                ClassWriter cw = new ClassWriter(0);
+                cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, className(i), null, superName(i), new String[]{ "java/lang/Runnable" });
+                cw.visitEnd();
+                out.putNextEntry(new ZipEntry(className(i) + ".class"));
+                out.write(cw.toByteArray());
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static String className(int i) {
+        return "test/C" + i;
+    }
+
+    private static String superName(int i) {
+        return i == 0 ? "java/lang/Object" : className((i - 1) / 2);
+    }
+}